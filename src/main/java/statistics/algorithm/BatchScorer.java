@@ -0,0 +1,214 @@
+package statistics.algorithm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Score whole {@link SpectrumColumns} at once. Each formula is a plain counted loop over primitive
+ * columns, so the algorithm is dispatched once per column set rather than once per entity and the
+ * loops are simple enough for the JIT to unroll and vectorize. Formulas are kept term-for-term
+ * identical to {@link Spectrum} so both paths produce the same scores.
+ */
+public class BatchScorer {
+
+  public static double[] score(SpectrumColumns columns, RankingAlgorithm algorithm) {
+    var scores = new double[columns.size()];
+    score(columns, algorithm, scores);
+    return scores;
+  }
+
+  /**
+   * Score every entity of the columns with one algorithm, writing into the given score column
+   */
+  public static void score(SpectrumColumns columns, RankingAlgorithm algorithm, double[] scores) {
+    score(columns, algorithm, scores, 0, columns.size());
+  }
+
+  /**
+   * Score the entities in [from, to) of the columns, writing into the same range of the score
+   * column
+   */
+  public static void score(SpectrumColumns columns, RankingAlgorithm algorithm, double[] scores,
+      int from, int to) {
+    if (scores.length < columns.size()) {
+      throw new IllegalArgumentException("score column is shorter than spectrum columns");
+    }
+    var ef = columns.getEf();
+    var ep = columns.getEp();
+    var nf = columns.getNf();
+    var np = columns.getNp();
+
+    switch (algorithm) {
+      case TARANTULA:
+        for (int i = from; i < to; i++) {
+          scores[i] = Math.round(nf[i]) == 0 ? 0
+              : (ef[i] / (ef[i] + nf[i])) / ((ef[i] / (ef[i] + nf[i])) + (ep[i] / (ep[i] + np[i])));
+        }
+        break;
+      case OCHIAI:
+        for (int i = from; i < to; i++) {
+          scores[i] = Math.round(nf[i]) != 0 ? ef[i] / Math.sqrt((ef[i] + ep[i]) * (ef[i] + nf[i]))
+              : 0;
+        }
+        break;
+      case OCHIAI2:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] * np[i] / Math
+              .sqrt((ef[i] + ep[i]) * (nf[i] + np[i]) * (ef[i] + np[i]) * (ep[i] + nf[i]));
+        }
+        break;
+      case JACCARD:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (ef[i] + ep[i] + nf[i]);
+        }
+        break;
+      case RUSSELLRAO:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (ef[i] + ep[i] + nf[i] + np[i]);
+        }
+        break;
+      case SORENSENDICE:
+        for (int i = from; i < to; i++) {
+          scores[i] = 2 * ef[i] / (2 * ef[i] + ep[i] + nf[i]);
+        }
+        break;
+      case KULCZYNSKI1:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (nf[i] + ep[i]);
+        }
+        break;
+      case SIMPLEMATCHING:
+        for (int i = from; i < to; i++) {
+          scores[i] = (ef[i] + np[i]) / (ef[i] + ep[i] + nf[i] + np[i]);
+        }
+        break;
+      case M1:
+        for (int i = from; i < to; i++) {
+          scores[i] = (ef[i] + np[i]) / (nf[i] + ep[i]);
+        }
+        break;
+      case ROGERSTANIMOTO:
+        for (int i = from; i < to; i++) {
+          scores[i] = (ef[i] + np[i]) / (ef[i] + np[i] + 2 * nf[i] + 2 * ep[i]);
+        }
+        break;
+      case HAMMING:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] + np[i];
+        }
+        break;
+      case OVERLAP:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / Math.min(Math.min(ef[i], ep[i]), nf[i]);
+        }
+        break;
+      case WONG1:
+        System.arraycopy(ef, from, scores, from, to - from);
+        break;
+      case AMPLE:
+        for (int i = from; i < to; i++) {
+          scores[i] = Math.abs(ef[i] / (ef[i] + nf[i]) - ep[i] / (ep[i] + np[i]));
+        }
+        break;
+      case HAMANN:
+        for (int i = from; i < to; i++) {
+          scores[i] = (ef[i] + np[i] - ep[i] - nf[i]) / (ef[i] + ep[i] + nf[i] + np[i]);
+        }
+        break;
+      case DICE:
+        for (int i = from; i < to; i++) {
+          scores[i] = 2 * ef[i] / (ef[i] + ep[i] + nf[i]);
+        }
+        break;
+      case KULCZYNSKI2:
+        for (int i = from; i < to; i++) {
+          scores[i] = (1 / 2) * (ef[i] / (ef[i] + nf[i]) + ef[i] / (ef[i] + ep[i]));
+        }
+        break;
+      case SOKAL:
+        for (int i = from; i < to; i++) {
+          scores[i] = (2 * ef[i] + 2 * np[i]) / (2 * ef[i] + 2 * np[i] + nf[i] + ep[i]);
+        }
+        break;
+      case M2:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (ef[i] + np[i] + 2 * nf[i] + 2 * ep[i]);
+        }
+        break;
+      case GOODMAN:
+        for (int i = from; i < to; i++) {
+          scores[i] = (2 * ef[i] - nf[i] - ep[i]) / (2 * ef[i] + nf[i] + ep[i]);
+        }
+        break;
+      case EUCLID:
+        for (int i = from; i < to; i++) {
+          scores[i] = Math.sqrt(ef[i] + np[i]);
+        }
+        break;
+      case ANDERBERG:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (ef[i] + 2 * ep[i] + 2 * nf[i]);
+        }
+        break;
+      case ZOLTAR:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] / (ef[i] + ep[i] + nf[i] + 10000 * nf[i] * ep[i] / ef[i]);
+        }
+        break;
+      case WONG2:
+        for (int i = from; i < to; i++) {
+          scores[i] = ef[i] - ep[i];
+        }
+        break;
+      case WONG3:
+        for (int i = from; i < to; i++) {
+          double h = ep[i];
+          if (ep[i] > 2 && ep[i] <= 10) {
+            h = 2 + 0.1 * (ep[i] - 2);
+          } else if (ep[i] > 10) {
+            h = 2.8 + 0.01 * (ep[i] - 10);
+          }
+          scores[i] = ef[i] - h;
+        }
+        break;
+      default:
+        // no formula, as AlgorithmCollection gives no score
+        Arrays.fill(scores, from, to, Double.NaN);
+    }
+  }
+
+  /**
+   * Score every entity with a built-in algorithm or a custom formula
+   */
+  public static double[] score(SpectrumColumns columns, SpectrumFormula formula) {
+    var scores = new double[columns.size()];
+    formula.score(columns, scores);
+    return scores;
+  }
+
+  /**
+   * Score every entity with all available algorithms; the result is indexed by
+   * {@link RankingAlgorithm#ordinal()}
+   */
+  public static double[][] scoreAll(SpectrumColumns columns) {
+    var scores = new double[RankingAlgorithm.values().length][];
+    for (RankingAlgorithm algorithm : RankingAlgorithm.values()) {
+      scores[algorithm.ordinal()] = score(columns, algorithm);
+    }
+    return scores;
+  }
+
+  public static Map<RankingAlgorithm, double[]> scoreAll(SpectrumColumns columns,
+      Collection<RankingAlgorithm> algorithms) {
+    Map<RankingAlgorithm, double[]> scores = new EnumMap<>(RankingAlgorithm.class);
+    algorithms.forEach(algorithm -> scores.put(algorithm, score(columns, algorithm)));
+    return scores;
+  }
+
+  public static Map<RankingAlgorithm, double[]> scoreAll(SpectrumColumns columns,
+      RankingAlgorithm... algorithms) {
+    return scoreAll(columns, Arrays.asList(algorithms));
+  }
+}
@@ -0,0 +1,62 @@
+package statistics.algorithm;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A formula compiled from an expression into a single {@link MethodHandle} of type
+ * (double ef, double ep, double nf, double np)double, evaluated through its {@link FormulaKernel},
+ * or through the handle itself where no kernel could be loaded
+ */
+@Getter
+public class CustomFormula implements SpectrumFormula {
+
+  private final String name;
+  private final String expression;
+  private final MethodHandle handle;
+  /* score methods of the kernel holding the handle as a constant; without a kernel, the handle and
+     null */
+  @Getter(AccessLevel.NONE)
+  private final MethodHandle kernel;
+  @Getter(AccessLevel.NONE)
+  private final MethodHandle columnKernel;
+
+  CustomFormula(String name, String expression, MethodHandle handle, MethodHandle kernel,
+      MethodHandle columnKernel) {
+    this.name = name;
+    this.expression = expression;
+    this.handle = handle;
+    this.kernel = kernel;
+    this.columnKernel = columnKernel;
+  }
+
+  @Override
+  public double score(double ef, double ep, double nf, double np) {
+    try {
+      return (double) kernel.invokeExact(ef, ep, nf, np);
+    } catch (Throwable throwable) {
+      throw new IllegalStateException("Failed to evaluate formula " + name, throwable);
+    }
+  }
+
+  @Override
+  public void score(SpectrumColumns columns, double[] scores, int from, int to) {
+    if (columnKernel == null) {
+      SpectrumFormula.super.score(columns, scores, from, to);
+      return;
+    }
+    try {
+      columnKernel.invokeExact(columns.getEf(), columns.getEp(), columns.getNf(), columns.getNp(),
+          scores, from, to);
+    } catch (Throwable throwable) {
+      throw new IllegalStateException("Failed to evaluate formula " + name, throwable);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,22 @@
+package statistics.algorithm;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * A partition of entity indices into classes whose members always share a score, such as entities
+ * with identical spectra. Rankings are computed on classes and expanded to entities with
+ * {@link TopK#select(double[], EntityClasses, int)}.
+ */
+public interface EntityClasses {
+
+  int getClassCount();
+
+  int getEntityCount();
+
+  int getClassSize(int classId);
+
+  /**
+   * Members of a class, in increasing index order
+   */
+  PrimitiveIterator.OfInt members(int classId);
+}
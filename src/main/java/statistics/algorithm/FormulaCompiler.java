@@ -0,0 +1,401 @@
+package statistics.algorithm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Compile a formula expression over ef, ep, nf and np into a tree of {@link MethodHandle}
+ * combinators. The expression is parsed once, and the tree is bound to a static final field of a
+ * copy of {@link FormulaKernel} loaded for the formula alone, so that the JIT sees a constant
+ * handle and compiles its lambda forms like ordinary code.
+ *
+ * <p>The copy is defined from the class file of the kernel, read as a resource. Where the class
+ * file cannot be read or defined, as with some shaded or linked runtimes, the formula runs on its
+ * handle directly instead: same scores, without the constant folding.
+ *
+ * <p>Supported syntax, from lowest to highest precedence:
+ * <ul>
+ * <li>conditional: {@code a < b ? x : y} or {@code (a < b) ? x : y}, with
+ * {@code == != < <= > >=}</li>
+ * <li>{@code + -}</li>
+ * <li>{@code * /}</li>
+ * <li>unary {@code -}</li>
+ * <li>numbers, variables {@code ef ep nf np}, parentheses and the functions {@code sqrt abs log
+ * exp pow min max}</li>
+ * </ul>
+ * Example: {@code nf == 0 ? 0 : ef / sqrt((ef + ep) * (ef + nf))}
+ */
+public class FormulaCompiler {
+
+  private static final List<String> VARIABLES = List.of("ef", "ep", "nf", "np");
+  private static final MethodType FORMULA_TYPE = MethodType
+      .methodType(double.class, double.class, double.class, double.class, double.class);
+  private static final MethodType TEST_TYPE = FORMULA_TYPE.changeReturnType(boolean.class);
+  private static final int[] SHARED_ARGUMENTS = {0, 1, 2, 3, 0, 1, 2, 3};
+  private static final MethodType COLUMNS_TYPE = MethodType.methodType(void.class, double[].class,
+      double[].class, double[].class, double[].class, double[].class, int.class, int.class);
+  private static final byte[] KERNEL_BYTES = kernelBytes();
+
+  private static final MethodHandle ADD = operator("add", 2, double.class);
+  private static final MethodHandle SUBTRACT = operator("subtract", 2, double.class);
+  private static final MethodHandle MULTIPLY = operator("multiply", 2, double.class);
+  private static final MethodHandle DIVIDE = operator("divide", 2, double.class);
+  private static final MethodHandle NEGATE = operator("negate", 1, double.class);
+
+  private static final Map<String, MethodHandle> COMPARATORS = Map.of(
+      "==", operator("eq", 2, boolean.class),
+      "!=", operator("ne", 2, boolean.class),
+      "<", operator("lt", 2, boolean.class),
+      "<=", operator("le", 2, boolean.class),
+      ">", operator("gt", 2, boolean.class),
+      ">=", operator("ge", 2, boolean.class));
+
+  private static final Map<String, MethodHandle> FUNCTIONS = Map.of(
+      "sqrt", math("sqrt", 1),
+      "abs", math("abs", 1),
+      "log", math("log", 1),
+      "exp", math("exp", 1),
+      "pow", math("pow", 2),
+      "min", math("min", 2),
+      "max", math("max", 2));
+
+  private final String expression;
+  private int position;
+
+  private FormulaCompiler(String expression) {
+    this.expression = expression;
+  }
+
+  public static CustomFormula compile(String name, String expression) {
+    var compiler = new FormulaCompiler(expression);
+    var handle = compiler.value(compiler.parseConditional());
+    compiler.skipSpaces();
+    if (compiler.position < expression.length()) {
+      throw compiler.error("unexpected '" + expression.charAt(compiler.position) + "'");
+    }
+    var kernel = KERNEL_BYTES == null ? null : new KernelLoader(handle).defineKernel();
+    if (kernel == null) {
+      return new CustomFormula(name, expression, handle, handle, null);
+    }
+    try {
+      return new CustomFormula(name, expression, handle, kernelMethod(kernel, FORMULA_TYPE),
+          kernelMethod(kernel, COLUMNS_TYPE));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot load the kernel of formula " + name, e);
+    }
+  }
+
+  /**
+   * The score method of a kernel copy, which is package-private in a package of its own loader
+   */
+  private static MethodHandle kernelMethod(Class<?> kernel, MethodType type)
+      throws ReflectiveOperationException {
+    var method = kernel.getMethod("score", type.parameterArray());
+    method.setAccessible(true);
+    return MethodHandles.lookup().unreflect(method);
+  }
+
+  /*
+      A conditional, or a bare comparison returning boolean when no '?' follows it, which only a
+      conditional may take, as in (nf == 0) ? 0 : ef
+   */
+  private MethodHandle parseConditional() {
+    var condition = parseComparison();
+    if (condition.type().returnType() != boolean.class || !accept('?')) {
+      return condition;
+    }
+    var whenTrue = value(parseConditional());
+    expect(':');
+    var whenFalse = value(parseConditional());
+    return MethodHandles.guardWithTest(condition, whenTrue, whenFalse);
+  }
+
+  private MethodHandle parseComparison() {
+    var left = parseAdditive();
+    var comparator = peekComparator();
+    if (comparator == null) {
+      return left;
+    }
+    value(left);
+    position += comparator.length();
+    var right = value(parseAdditive());
+    return MethodHandles.permuteArguments(collect(COMPARATORS.get(comparator), left, right),
+        TEST_TYPE, SHARED_ARGUMENTS);
+  }
+
+  private MethodHandle parseAdditive() {
+    var result = parseMultiplicative();
+    while (true) {
+      if (accept('+')) {
+        result = combine(ADD, value(result), value(parseMultiplicative()));
+      } else if (accept('-')) {
+        result = combine(SUBTRACT, value(result), value(parseMultiplicative()));
+      } else {
+        return result;
+      }
+    }
+  }
+
+  private MethodHandle parseMultiplicative() {
+    var result = parseUnary();
+    while (true) {
+      if (accept('*')) {
+        result = combine(MULTIPLY, value(result), value(parseUnary()));
+      } else if (accept('/')) {
+        result = combine(DIVIDE, value(result), value(parseUnary()));
+      } else {
+        return result;
+      }
+    }
+  }
+
+  private MethodHandle parseUnary() {
+    if (accept('-')) {
+      return MethodHandles.filterReturnValue(value(parseUnary()), NEGATE);
+    }
+    return parsePrimary();
+  }
+
+  private MethodHandle parsePrimary() {
+    skipSpaces();
+    if (accept('(')) {
+      var inner = parseConditional();
+      expect(')');
+      return inner;
+    }
+    if (position < expression.length() && (Character.isDigit(expression.charAt(position))
+        || expression.charAt(position) == '.')) {
+      return constant(parseNumber());
+    }
+    var identifier = parseIdentifier();
+    if (VARIABLES.contains(identifier)) {
+      return MethodHandles.permuteArguments(MethodHandles.identity(double.class), FORMULA_TYPE,
+          VARIABLES.indexOf(identifier));
+    }
+    var function = FUNCTIONS.get(identifier);
+    if (function == null) {
+      throw error("unknown identifier '" + identifier + "'");
+    }
+    expect('(');
+    var argument = value(parseConditional());
+    if (function.type().parameterCount() == 1) {
+      expect(')');
+      return MethodHandles.filterReturnValue(argument, function);
+    }
+    expect(',');
+    var second = value(parseConditional());
+    expect(')');
+    return combine(function, argument, second);
+  }
+
+  private double parseNumber() {
+    var start = position;
+    while (position < expression.length() && (Character.isDigit(expression.charAt(position))
+        || expression.charAt(position) == '.')) {
+      position++;
+    }
+    if (position < expression.length() && (expression.charAt(position) == 'e'
+        || expression.charAt(position) == 'E')) {
+      position++;
+      if (position < expression.length() && (expression.charAt(position) == '+'
+          || expression.charAt(position) == '-')) {
+        position++;
+      }
+      while (position < expression.length() && Character.isDigit(expression.charAt(position))) {
+        position++;
+      }
+    }
+    try {
+      return Double.parseDouble(expression.substring(start, position));
+    } catch (NumberFormatException e) {
+      throw error("malformed number '" + expression.substring(start, position) + "'");
+    }
+  }
+
+  private String parseIdentifier() {
+    var start = position;
+    while (position < expression.length() && Character
+        .isLetterOrDigit(expression.charAt(position))) {
+      position++;
+    }
+    if (start == position) {
+      throw error(position < expression.length() ? "unexpected '" + expression.charAt(position)
+          + "'" : "unexpected end of expression");
+    }
+    return expression.substring(start, position);
+  }
+
+  private String peekComparator() {
+    skipSpaces();
+    for (String comparator : List.of("==", "!=", "<=", ">=", "<", ">")) {
+      if (expression.startsWith(comparator, position)) {
+        return comparator;
+      }
+    }
+    return null;
+  }
+
+  private boolean accept(char c) {
+    skipSpaces();
+    if (position < expression.length() && expression.charAt(position) == c) {
+      position++;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c) {
+    if (!accept(c)) {
+      throw error("expected '" + c + "'");
+    }
+  }
+
+  private void skipSpaces() {
+    while (position < expression.length() && Character.isWhitespace(expression.charAt(position))) {
+      position++;
+    }
+  }
+
+  /*
+      The operand itself, if it is a number rather than a bare comparison
+   */
+  private MethodHandle value(MethodHandle operand) {
+    if (operand.type().returnType() == boolean.class) {
+      throw error("expected '?' after comparison");
+    }
+    return operand;
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(
+        String.format("%s at position %d of formula: %s", message, position, expression));
+  }
+
+  /**
+   * (a, b) => (ef, ep, nf, np) -> operator(a(ef, ep, nf, np), b(ef, ep, nf, np))
+   */
+  private static MethodHandle combine(MethodHandle operator, MethodHandle a, MethodHandle b) {
+    return MethodHandles.permuteArguments(collect(operator, a, b), FORMULA_TYPE, SHARED_ARGUMENTS);
+  }
+
+  /**
+   * (x, y) -> operator(x, y) becomes (a's 4 arguments, b's 4 arguments) -> operator(a(..), b(..))
+   */
+  private static MethodHandle collect(MethodHandle operator, MethodHandle a, MethodHandle b) {
+    return MethodHandles.collectArguments(MethodHandles.collectArguments(operator, 1, b), 0, a);
+  }
+
+  private static MethodHandle constant(double value) {
+    return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0,
+        FORMULA_TYPE.parameterList());
+  }
+
+  private static MethodHandle operator(String name, int arity, Class<?> returnType) {
+    try {
+      return MethodHandles.lookup().findStatic(FormulaCompiler.class, name,
+          MethodType.methodType(returnType, arity == 1 ? List.of(double.class)
+              : List.of(double.class, double.class)));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private static MethodHandle math(String name, int arity) {
+    try {
+      return MethodHandles.lookup().findStatic(Math.class, name,
+          MethodType.methodType(double.class, arity == 1 ? List.of(double.class)
+              : List.of(double.class, double.class)));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * @return the class file of the kernel, or null if the class loader does not expose it
+   */
+  private static byte[] kernelBytes() {
+    try (var in = FormulaKernel.class.getResourceAsStream("FormulaKernel.class")) {
+      return in == null ? null : in.readAllBytes();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Defines one copy of {@link FormulaKernel}, and supplies it its formula when it is initialized
+   */
+  private static final class KernelLoader extends ClassLoader implements Supplier<MethodHandle> {
+
+    private final MethodHandle formula;
+
+    private KernelLoader(MethodHandle formula) {
+      super(FormulaKernel.class.getClassLoader());
+      this.formula = formula;
+    }
+
+    /**
+     * @return the copy, or null if the class file cannot be defined here
+     */
+    private Class<?> defineKernel() {
+      try {
+        return defineClass(FormulaKernel.class.getName(), KERNEL_BYTES, 0, KERNEL_BYTES.length);
+      } catch (LinkageError | SecurityException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public MethodHandle get() {
+      return formula;
+    }
+  }
+
+  private static double add(double a, double b) {
+    return a + b;
+  }
+
+  private static double subtract(double a, double b) {
+    return a - b;
+  }
+
+  private static double multiply(double a, double b) {
+    return a * b;
+  }
+
+  private static double divide(double a, double b) {
+    return a / b;
+  }
+
+  private static double negate(double a) {
+    return -a;
+  }
+
+  private static boolean eq(double a, double b) {
+    return a == b;
+  }
+
+  private static boolean ne(double a, double b) {
+    return a != b;
+  }
+
+  private static boolean lt(double a, double b) {
+    return a < b;
+  }
+
+  private static boolean le(double a, double b) {
+    return a <= b;
+  }
+
+  private static boolean gt(double a, double b) {
+    return a > b;
+  }
+
+  private static boolean ge(double a, double b) {
+    return a >= b;
+  }
+}
@@ -0,0 +1,35 @@
+package statistics.algorithm;
+
+import java.lang.invoke.MethodHandle;
+import java.util.function.Supplier;
+
+/**
+ * Template of the class every {@link CustomFormula} loads a private copy of. The copy holds the
+ * compiled formula in a static final field, which the JIT treats as a constant, so the formula is
+ * inlined into the column loop below instead of being called through a handle per entity.
+ *
+ * <p>Copies are defined by a class loader of their own that supplies the handle, see {@link
+ * FormulaCompiler}. This class itself is package-private and never used; loaded as is, it has no
+ * formula.
+ */
+@SuppressWarnings("unchecked")
+final class FormulaKernel {
+
+  private static final MethodHandle FORMULA = FormulaKernel.class.getClassLoader()
+      instanceof Supplier ? ((Supplier<MethodHandle>) FormulaKernel.class.getClassLoader()).get()
+      : null;
+
+  private FormulaKernel() {
+  }
+
+  public static double score(double ef, double ep, double nf, double np) throws Throwable {
+    return (double) FORMULA.invokeExact(ef, ep, nf, np);
+  }
+
+  public static void score(double[] ef, double[] ep, double[] nf, double[] np, double[] scores,
+      int from, int to) throws Throwable {
+    for (int i = from; i < to; i++) {
+      scores[i] = (double) FORMULA.invokeExact(ef[i], ep[i], nf[i], np[i]);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package statistics.algorithm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Custom formulas registered at runtime, next to the built-in {@link RankingAlgorithm} values. A
+ * formula file has one {@code NAME = expression} line per formula, and # comment lines:
+ * <pre>
+ *   MY_OCHIAI = nf == 0 ? 0 : ef / sqrt((ef + ep) * (ef + nf))
+ * </pre>
+ */
+public class FormulaRegistry {
+
+  private static final Map<String, CustomFormula> formulas = new LinkedHashMap<>();
+
+  public static synchronized CustomFormula register(String name, String expression) {
+    var formulaName = name.trim().toUpperCase();
+    if (Arrays.stream(RankingAlgorithm.values()).anyMatch(a -> a.name().equals(formulaName))) {
+      throw new IllegalArgumentException(formulaName + " is a built-in ranking algorithm");
+    }
+    var formula = FormulaCompiler.compile(formulaName, expression.trim());
+    formulas.put(formulaName, formula);
+    return formula;
+  }
+
+  /**
+   * Register every formula of a formula file, in file order
+   */
+  public static List<CustomFormula> load(Path formulaFile) throws IOException {
+    var loaded = new ArrayList<CustomFormula>();
+    Files.readAllLines(formulaFile).stream()
+        .map(String::trim)
+        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+        .forEach(line -> {
+          if (!line.contains("=")) {
+            throw new IllegalArgumentException("Expected NAME = expression but got: " + line);
+          }
+          loaded.add(register(line.substring(0, line.indexOf('=')),
+              line.substring(line.indexOf('=') + 1)));
+        });
+    return loaded;
+  }
+
+  public static synchronized Optional<CustomFormula> getCustomFormula(String name) {
+    return Optional.ofNullable(formulas.get(name.trim().toUpperCase()));
+  }
+
+  public static synchronized List<CustomFormula> getCustomFormulas() {
+    return new ArrayList<>(formulas.values());
+  }
+
+  /**
+   * Resolve a built-in algorithm or a registered formula by name
+   */
+  public static SpectrumFormula lookup(String name) {
+    var formulaName = name.trim().toUpperCase();
+    return Arrays.stream(RankingAlgorithm.values())
+        .filter(algorithm -> algorithm.name().equals(formulaName))
+        .<SpectrumFormula>map(algorithm -> algorithm)
+        .findFirst()
+        .or(() -> getCustomFormula(formulaName))
+        .orElseThrow(() -> new IllegalArgumentException("Unknown ranking formula " + name));
+  }
+
+  /**
+   * All built-in algorithms followed by all registered formulas
+   */
+  public static List<SpectrumFormula> getAllFormulas() {
+    List<SpectrumFormula> all = new ArrayList<>(Arrays.asList(RankingAlgorithm.values()));
+    all.addAll(getCustomFormulas());
+    return all;
+  }
+}
@@ -0,0 +1,187 @@
+package statistics.algorithm;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.PriorityQueue;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Max-heap of int slots keyed by (score, tie-break index) in {@link TopK#isBetter ranking order},
+ * with a position index so that any slot can be inserted, re-keyed or removed in O(log n).
+ *
+ * <p>When every key changes at once, as all scores do when nf or np changes, {@link
+ * #rekeyAll(IntToDoubleFunction)} recomputes the scores and restores the heap bottom-up in O(n)
+ * instead of sorting. The best slots are then read with {@link #inOrder()}, which visits the heap
+ * lazily and costs O(m log m) for the first m slots.
+ */
+public class IndexedScoreHeap {
+
+  private int[] heap;
+  private int[] positions;
+  private double[] scores;
+  private int[] tieBreaks;
+  private int size;
+
+  public IndexedScoreHeap() {
+    this(16);
+  }
+
+  public IndexedScoreHeap(int capacity) {
+    capacity = Math.max(1, capacity);
+    heap = new int[capacity];
+    positions = new int[capacity];
+    Arrays.fill(positions, -1);
+    scores = new double[capacity];
+    tieBreaks = new int[capacity];
+  }
+
+  /**
+   * Insert a slot, or move it to its new place if its key changed
+   */
+  public void set(int slot, double score, int tieBreak) {
+    ensureSlotCapacity(slot + 1);
+    scores[slot] = score;
+    tieBreaks[slot] = tieBreak;
+    var position = positions[slot];
+    if (position < 0) {
+      heap[size] = slot;
+      positions[slot] = size;
+      siftUp(size++);
+    } else {
+      siftDown(siftUp(position));
+    }
+  }
+
+  public void remove(int slot) {
+    var position = slot < positions.length ? positions[slot] : -1;
+    if (position < 0) {
+      return;
+    }
+    positions[slot] = -1;
+    if (position == --size) {
+      return;
+    }
+    heap[position] = heap[size];
+    positions[heap[position]] = position;
+    siftDown(siftUp(position));
+  }
+
+  /**
+   * Recompute the score of every slot and restore the heap in one linear pass
+   */
+  public void rekeyAll(IntToDoubleFunction score) {
+    for (int p = 0; p < size; p++) {
+      scores[heap[p]] = score.applyAsDouble(heap[p]);
+    }
+    for (int p = (size >>> 1) - 1; p >= 0; p--) {
+      siftDown(p);
+    }
+  }
+
+  public boolean contains(int slot) {
+    return slot < positions.length && positions[slot] >= 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double getScore(int slot) {
+    return scores[slot];
+  }
+
+  public int getTieBreak(int slot) {
+    return tieBreaks[slot];
+  }
+
+  /**
+   * Slots from best to worst, explored lazily from the root; the heap must not change while
+   * iterating
+   */
+  public PrimitiveIterator.OfInt inOrder() {
+    var frontier = new PriorityQueue<Integer>((a, b) -> a.equals(b) ? 0
+        : isBetter(heap[a], heap[b]) ? -1 : 1);
+    if (size > 0) {
+      frontier.add(0);
+    }
+    return new PrimitiveIterator.OfInt() {
+      @Override
+      public boolean hasNext() {
+        return !frontier.isEmpty();
+      }
+
+      @Override
+      public int nextInt() {
+        if (frontier.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        int position = frontier.poll();
+        var left = 2 * position + 1;
+        if (left < size) {
+          frontier.add(left);
+        }
+        if (left + 1 < size) {
+          frontier.add(left + 1);
+        }
+        return heap[position];
+      }
+    };
+  }
+
+  private boolean isBetter(int slot, int otherSlot) {
+    return TopK.isBetter(scores[slot], tieBreaks[slot], scores[otherSlot], tieBreaks[otherSlot]);
+  }
+
+  private int siftUp(int position) {
+    while (position > 0) {
+      var parent = (position - 1) >>> 1;
+      if (!isBetter(heap[position], heap[parent])) {
+        break;
+      }
+      swap(position, parent);
+      position = parent;
+    }
+    return position;
+  }
+
+  private void siftDown(int position) {
+    while (true) {
+      var best = position;
+      var left = 2 * position + 1;
+      var right = left + 1;
+      if (left < size && isBetter(heap[left], heap[best])) {
+        best = left;
+      }
+      if (right < size && isBetter(heap[right], heap[best])) {
+        best = right;
+      }
+      if (best == position) {
+        return;
+      }
+      swap(position, best);
+      position = best;
+    }
+  }
+
+  private void swap(int i, int j) {
+    var slot = heap[i];
+    heap[i] = heap[j];
+    heap[j] = slot;
+    positions[heap[i]] = i;
+    positions[heap[j]] = j;
+  }
+
+  private void ensureSlotCapacity(int slotCount) {
+    if (slotCount <= positions.length) {
+      return;
+    }
+    var capacity = Math.max(slotCount, positions.length * 2);
+    heap = Arrays.copyOf(heap, capacity);
+    var oldLength = positions.length;
+    positions = Arrays.copyOf(positions, capacity);
+    Arrays.fill(positions, oldLength, capacity, -1);
+    scores = Arrays.copyOf(scores, capacity);
+    tieBreaks = Arrays.copyOf(tieBreaks, capacity);
+  }
+}
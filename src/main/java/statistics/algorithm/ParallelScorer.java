@@ -0,0 +1,139 @@
+package statistics.algorithm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+import static statistics.profiling.CloverParams.CHUNK_SIZE;
+import static statistics.profiling.CloverParams.PARALLELISM;
+
+/**
+ * Score {@link SpectrumColumns} on a {@link ForkJoinPool}. Columns are split into chunks of
+ * consecutive entities, each chunk is scored in place into one preallocated score column, and
+ * when a top k is asked for, every chunk selects its own top k while its scores are still in cache;
+ * chunk selections are then merged up the fork-join tree.
+ *
+ * <p>Scorers created for a number of workers share one pool per number of workers for the life of
+ * the JVM; a scorer created on a given pool leaves that pool to its owner.
+ */
+public class ParallelScorer {
+
+  /* parallelism => pool shared by the scorers created for it; workers are daemon threads */
+  private static final Map<Integer, ForkJoinPool> SHARED_POOLS = new ConcurrentHashMap<>();
+
+  private final ForkJoinPool pool;
+  private final int chunkSize;
+
+  private ParallelScorer(ForkJoinPool pool, int chunkSize) {
+    this.pool = pool;
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * A scorer with {@link statistics.profiling.CloverParams#PARALLELISM} workers
+   */
+  public static ParallelScorer create() {
+    return create(PARALLELISM.getIntValue());
+  }
+
+  public static ParallelScorer create(int parallelism) {
+    var pool = SHARED_POOLS.computeIfAbsent(Math.max(1, parallelism), ForkJoinPool::new);
+    return create(pool, CHUNK_SIZE.getIntValue());
+  }
+
+  public static ParallelScorer create(ForkJoinPool pool, int chunkSize) {
+    return new ParallelScorer(pool, chunkSize);
+  }
+
+  public int getParallelism() {
+    return pool.getParallelism();
+  }
+
+  public double[] score(SpectrumColumns columns, SpectrumFormula formula) {
+    var scores = new double[columns.size()];
+    score(columns, formula, scores);
+    return scores;
+  }
+
+  /**
+   * Score all entities of the columns, writing into the given score column
+   */
+  public void score(SpectrumColumns columns, SpectrumFormula formula, double[] scores) {
+    if (scores.length < columns.size()) {
+      throw new IllegalArgumentException("score column is shorter than spectrum columns");
+    }
+    pool.invoke(new ChunkTask(columns, formula, scores, 0, columns.size(), -1));
+  }
+
+  /**
+   * Score the representatives of spectrum classes in chunks, each chunk selecting its k best
+   * classes, and expand the k best entities from the merged selection. Classes are numbered in
+   * order of their first entity, so the k best classes by score and class id hold the k best
+   * entities, apart from the classes tying the last of them, which are gathered in one more pass.
+   */
+  public TopK scoreAndSelect(SpectrumClasses classes, SpectrumFormula formula, int k) {
+    var representatives = classes.getRepresentatives();
+    var scores = new double[representatives.size()];
+    var selected = pool.invoke(new ChunkTask(representatives, formula, scores, 0,
+        representatives.size(), k));
+    if (selected.size() == 0) {
+      return TopK.selectOrdered(new int[0], scores, classes, k);
+    }
+    var boundary = selected.getScore(selected.size() - 1);
+    var ahead = IntStream.range(0, selected.size())
+        .filter(position -> Double.compare(selected.getScore(position), boundary) != 0)
+        .map(selected::getIndex);
+    var tied = pool.submit(() -> IntStream.range(0, scores.length)
+        .parallel()
+        .filter(c -> Double.compare(scores[c], boundary) == 0)
+        .toArray())
+        .join();
+    return TopK.selectOrdered(IntStream.concat(ahead, IntStream.of(tied)).toArray(), scores,
+        classes, k);
+  }
+
+  /**
+   * Scores [from, to); with k >= 0, also returns the k best entries of the range
+   */
+  private final class ChunkTask extends RecursiveTask<TopK> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SpectrumColumns columns;
+    private final SpectrumFormula formula;
+    private final double[] scores;
+    private final int from;
+    private final int to;
+    private final int k;
+
+    private ChunkTask(SpectrumColumns columns, SpectrumFormula formula, double[] scores, int from,
+        int to, int k) {
+      this.columns = columns;
+      this.formula = formula;
+      this.scores = scores;
+      this.from = from;
+      this.to = to;
+      this.k = k;
+    }
+
+    @Override
+    protected TopK compute() {
+      if (to - from <= chunkSize) {
+        formula.score(columns, scores, from, to);
+        return k < 0 ? null : TopK.select(scores, from, to, k);
+      }
+      // split on a chunk boundary so that chunks never straddle tasks
+      var chunks = (to - from + chunkSize - 1) / chunkSize;
+      var middle = from + chunks / 2 * chunkSize;
+      var left = new ChunkTask(columns, formula, scores, from, middle, k);
+      var right = new ChunkTask(columns, formula, scores, middle, to, k);
+      left.fork();
+      var rightSelected = right.compute();
+      var leftSelected = left.join();
+      return k < 0 ? null : TopK.merge(scores, List.of(leftSelected, rightSelected), k, null);
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package statistics.algorithm;
 
-public enum RankingAlgorithm {
+public enum RankingAlgorithm implements SpectrumFormula {
   TARANTULA,
   OCHIAI,
   OCHIAI2,
@@ -25,5 +25,20 @@ public enum RankingAlgorithm {
   ANDERBERG,
   ZOLTAR,
   WONG2,
-  WONG3
+  WONG3;
+
+  @Override
+  public String getName() {
+    return name();
+  }
+
+  @Override
+  public double score(double ef, double ep, double nf, double np) {
+    return AlgorithmCollection.AlgorithmSelectorFunction.apply(new Spectrum(ef, ep, nf, np), this);
+  }
+
+  @Override
+  public void score(SpectrumColumns columns, double[] scores, int from, int to) {
+    BatchScorer.score(columns, this, scores, from, to);
+  }
 }
@@ -27,8 +27,8 @@ public class Spectrum {
   public Spectrum(Program program, AbstractEntity entity) {
     ef = entity.getTotalNumberOfFailedTests();
     ep = entity.getTotalNumberOfPassedTests();
-    nf = program.getTotalFailedTests(entity.getClass());
-    np = program.getTotalPassedTests(entity.getClass());
+    nf = program.getTotalFailedTests(entity.getType());
+    np = program.getTotalPassedTests(entity.getType());
   }
 
   public static Spectrum create(AbstractEntity entity) {
@@ -0,0 +1,161 @@
+package statistics.algorithm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * Equivalence classes of identical spectra. Every formula is a function of (ef, ep, nf, np) only,
+ * and nf, np are constant per level, so entities sharing a spectrum get the same score under any
+ * formula. Scoring one representative per class and expanding the class scores back to entities
+ * gives exactly the per-entity scores with per-class work.
+ *
+ * <p>Classes are numbered in order of their first entity, and the members of a class are kept in
+ * increasing index order.
+ */
+public class SpectrumClasses implements EntityClasses {
+
+  private final SpectrumColumns representatives;
+  private final int[] classOf;
+  private final int[] memberStart;
+  private final int[] members;
+
+  private SpectrumClasses(SpectrumColumns representatives, int[] classOf, int[] memberStart,
+      int[] members) {
+    this.representatives = representatives;
+    this.classOf = classOf;
+    this.memberStart = memberStart;
+    this.members = members;
+  }
+
+  public static SpectrumClasses of(SpectrumColumns columns) {
+    var size = columns.size();
+    var classOf = new int[size];
+    var firstMembers = new int[Math.min(size, 16)];
+    Map<SpectrumKey, Integer> classIds = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      var key = new SpectrumKey(columns.getEf()[i], columns.getEp()[i], columns.getNf()[i],
+          columns.getNp()[i]);
+      var classId = classIds.get(key);
+      if (classId == null) {
+        classId = classIds.size();
+        classIds.put(key, classId);
+        if (classId == firstMembers.length) {
+          firstMembers = Arrays.copyOf(firstMembers, firstMembers.length * 2);
+        }
+        firstMembers[classId] = i;
+      }
+      classOf[i] = classId;
+    }
+
+    var classCount = classIds.size();
+    var memberStart = new int[classCount + 1];
+    for (int i = 0; i < size; i++) {
+      memberStart[classOf[i] + 1]++;
+    }
+    for (int c = 0; c < classCount; c++) {
+      memberStart[c + 1] += memberStart[c];
+    }
+    var next = Arrays.copyOf(memberStart, classCount);
+    var members = new int[size];
+    for (int i = 0; i < size; i++) {
+      members[next[classOf[i]]++] = i;
+    }
+
+    return new SpectrumClasses(columns.select(Arrays.copyOf(firstMembers, classCount)), classOf,
+        memberStart, members);
+  }
+
+  /**
+   * One spectrum per class, indexed by class id; this is what gets scored
+   */
+  public SpectrumColumns getRepresentatives() {
+    return representatives;
+  }
+
+  @Override
+  public int getClassCount() {
+    return memberStart.length - 1;
+  }
+
+  @Override
+  public int getEntityCount() {
+    return classOf.length;
+  }
+
+  public int getClassOf(int index) {
+    return classOf[index];
+  }
+
+  @Override
+  public int getClassSize(int classId) {
+    return memberStart[classId + 1] - memberStart[classId];
+  }
+
+  /**
+   * @return the index of the given member of a class, members being in increasing index order
+   */
+  public int getMember(int classId, int member) {
+    return members[memberStart[classId] + member];
+  }
+
+  @Override
+  public PrimitiveIterator.OfInt members(int classId) {
+    return IntStream.range(memberStart[classId], memberStart[classId + 1])
+        .map(m -> members[m])
+        .iterator();
+  }
+
+  /**
+   * Score every class with a formula
+   */
+  public double[] score(SpectrumFormula formula) {
+    return BatchScorer.score(representatives, formula);
+  }
+
+  /**
+   * Spread class scores back to a per-entity score column
+   */
+  public double[] expand(double[] classScores) {
+    var scores = new double[classOf.length];
+    for (int i = 0; i < scores.length; i++) {
+      scores[i] = classScores[classOf[i]];
+    }
+    return scores;
+  }
+
+  private static final class SpectrumKey {
+
+    private final double ef;
+    private final double ep;
+    private final double nf;
+    private final double np;
+
+    private SpectrumKey(double ef, double ep, double nf, double np) {
+      this.ef = ef;
+      this.ep = ep;
+      this.nf = nf;
+      this.np = np;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SpectrumKey)) {
+        return false;
+      }
+      var other = (SpectrumKey) o;
+      return Double.compare(ef, other.ef) == 0 && Double.compare(ep, other.ep) == 0
+          && Double.compare(nf, other.nf) == 0 && Double.compare(np, other.np) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      var hash = Double.hashCode(ef);
+      hash = 31 * hash + Double.hashCode(ep);
+      hash = 31 * hash + Double.hashCode(nf);
+      return 31 * hash + Double.hashCode(np);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package statistics.algorithm;
+
+import lombok.Getter;
+import statistics.entity.AbstractEntity;
+
+import java.util.List;
+
+/**
+ * Columnar form of a set of spectra: entity i is described by (ef[i], ep[i], nf[i], np[i]). This
+ * is the input of {@link BatchScorer}, which scores all entities of a column set in one sweep
+ * instead of building a {@link Spectrum} per entity.
+ */
+@Getter
+public class SpectrumColumns {
+
+  private final double[] ef;
+  private final double[] ep;
+  private final double[] nf;
+  private final double[] np;
+
+  public SpectrumColumns(double[] ef, double[] ep, double[] nf, double[] np) {
+    if (ep.length != ef.length || nf.length != ef.length || np.length != ef.length) {
+      throw new IllegalArgumentException("spectrum columns must have the same length");
+    }
+    this.ef = ef;
+    this.ep = ep;
+    this.nf = nf;
+    this.np = np;
+  }
+
+  public static SpectrumColumns of(int[] ef, int[] ep, long nf, long np) {
+    var size = ef.length;
+    var efColumn = new double[size];
+    var epColumn = new double[size];
+    var nfColumn = new double[size];
+    var npColumn = new double[size];
+    for (int i = 0; i < size; i++) {
+      efColumn[i] = ef[i];
+      epColumn[i] = ep[i];
+      nfColumn[i] = nf;
+      npColumn[i] = np;
+    }
+    return new SpectrumColumns(efColumn, epColumn, nfColumn, npColumn);
+  }
+
+  /**
+   * Extract the spectra of the given entities, in list order, with reference to their programs
+   */
+  public static SpectrumColumns from(List<? extends AbstractEntity> entities) {
+    var size = entities.size();
+    var efColumn = new double[size];
+    var epColumn = new double[size];
+    var nfColumn = new double[size];
+    var npColumn = new double[size];
+    for (int i = 0; i < size; i++) {
+      var entity = entities.get(i);
+      var program = entity.getParentProgram();
+      efColumn[i] = entity.getTotalNumberOfFailedTests();
+      epColumn[i] = entity.getTotalNumberOfPassedTests();
+      nfColumn[i] = program.getTotalFailedTests(entity.getType());
+      npColumn[i] = program.getTotalPassedTests(entity.getType());
+    }
+    return new SpectrumColumns(efColumn, epColumn, nfColumn, npColumn);
+  }
+
+  public int size() {
+    return ef.length;
+  }
+
+  /**
+   * Columns restricted to the given indices, in the given order
+   */
+  public SpectrumColumns select(int[] indices) {
+    var size = indices.length;
+    var efColumn = new double[size];
+    var epColumn = new double[size];
+    var nfColumn = new double[size];
+    var npColumn = new double[size];
+    for (int i = 0; i < size; i++) {
+      efColumn[i] = ef[indices[i]];
+      epColumn[i] = ep[indices[i]];
+      nfColumn[i] = nf[indices[i]];
+      npColumn[i] = np[indices[i]];
+    }
+    return new SpectrumColumns(efColumn, epColumn, nfColumn, npColumn);
+  }
+
+  public Spectrum toSpectrum(int index) {
+    return new Spectrum(ef[index], ep[index], nf[index], np[index]);
+  }
+}
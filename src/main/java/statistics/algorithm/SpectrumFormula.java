@@ -0,0 +1,33 @@
+package statistics.algorithm;
+
+/**
+ * A ranking formula over a spectrum (ef, ep, nf, np). Built-in formulas are the {@link
+ * RankingAlgorithm} values, custom ones are compiled from expressions by {@link FormulaCompiler}.
+ */
+public interface SpectrumFormula {
+
+  String getName();
+
+  double score(double ef, double ep, double nf, double np);
+
+  /**
+   * Score every entity of the columns, writing into the given score column
+   */
+  default void score(SpectrumColumns columns, double[] scores) {
+    score(columns, scores, 0, columns.size());
+  }
+
+  /**
+   * Score the entities in [from, to) of the columns, writing into the same range of the score
+   * column
+   */
+  default void score(SpectrumColumns columns, double[] scores, int from, int to) {
+    var ef = columns.getEf();
+    var ep = columns.getEp();
+    var nf = columns.getNf();
+    var np = columns.getNp();
+    for (int i = from; i < to; i++) {
+      scores[i] = score(ef[i], ep[i], nf[i], np[i]);
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package statistics.algorithm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The k best entries of a score column, best first, selected with a bounded primitive min-heap in
+ * O(n log k). Scores are ordered from high to low with {@link Double#compare(double, double)}, so
+ * NaN scores come first as they do when sorting boxed scores; equal scores are ordered by index.
+ *
+ * <p>Every selected entry carries its tie-aware ranks over the whole column:
+ * <ul>
+ * <li>dense rank: 1 + number of distinct scores strictly higher</li>
+ * <li>min rank: 1 + number of entries with a strictly higher score</li>
+ * <li>average rank: mean position of all entries sharing the score, including the ties left out
+ * of the selection at the boundary</li>
+ * </ul>
+ */
+public class TopK {
+
+  private final int[] indices;
+  private final double[] scores;
+  private final int[] denseRanks;
+  private final int[] minRanks;
+  private final double[] averageRanks;
+
+  private TopK(int[] indices, double[] scores, int[] denseRanks, int[] minRanks,
+      double[] averageRanks) {
+    this.indices = indices;
+    this.scores = scores;
+    this.denseRanks = denseRanks;
+    this.minRanks = minRanks;
+    this.averageRanks = averageRanks;
+  }
+
+  private TopK(int[] indices, double[] scores, int boundaryTies) {
+    this.indices = indices;
+    this.scores = scores;
+    var size = indices.length;
+    denseRanks = new int[size];
+    minRanks = new int[size];
+    averageRanks = new double[size];
+
+    var dense = 0;
+    var groupStart = 0;
+    while (groupStart < size) {
+      var groupEnd = groupStart + 1;
+      while (groupEnd < size && Double.compare(scores[groupEnd], scores[groupStart]) == 0) {
+        groupEnd++;
+      }
+      dense++;
+      var ties = groupEnd == size ? boundaryTies : groupEnd - groupStart;
+      for (int p = groupStart; p < groupEnd; p++) {
+        denseRanks[p] = dense;
+        minRanks[p] = groupStart + 1;
+        averageRanks[p] = groupStart + 1 + (ties - 1) / 2.0;
+      }
+      groupStart = groupEnd;
+    }
+  }
+
+  public static TopK select(double[] scores, int k) {
+    return select(scores, 0, scores.length, k);
+  }
+
+  /**
+   * Select the k best entries among the indices [from, to) of a score column
+   */
+  public static TopK select(double[] scores, int from, int to, int k) {
+    return select(scores, null, from, to, k, null);
+  }
+
+  /**
+   * Select the k best entries among the candidate indices of a score column
+   */
+  public static TopK select(double[] scores, int[] candidates, int k) {
+    return select(scores, candidates, 0, candidates.length, k, null);
+  }
+
+  /**
+   * Merge selections made on disjoint parts of a score column into the k best of all parts. Each
+   * part must hold at least the k best entries of its own part. Ties of the boundary score left out
+   * of every part are counted by {@code countScore}, which returns the number of entries of the
+   * whole column equal to a score.
+   */
+  public static TopK merge(double[] scores, Collection<TopK> parts, int k,
+      DoubleToIntFunction countScore) {
+    var candidates = parts.stream()
+        .flatMapToInt(part -> Arrays.stream(part.indices))
+        .toArray();
+    return select(scores, candidates, 0, candidates.length, k, countScore);
+  }
+
+  /**
+   * Candidate i is candidates[i], or i itself without candidate array. Boundary ties are counted
+   * among the candidates unless a counter is given.
+   */
+  private static TopK select(double[] scores, int[] candidates, int from, int to, int k,
+      DoubleToIntFunction countScore) {
+    var capacity = Math.max(0, Math.min(k, to - from));
+    var heapIndices = new int[capacity];
+    var heapScores = new double[capacity];
+    var heapSize = 0;
+
+    for (int c = from; c < to; c++) {
+      var index = candidates == null ? c : candidates[c];
+      var score = scores[index];
+      if (heapSize < capacity) {
+        heapIndices[heapSize] = index;
+        heapScores[heapSize] = score;
+        siftUp(heapIndices, heapScores, heapSize++);
+      } else if (capacity > 0 && isBetter(score, index, heapScores[0], heapIndices[0])) {
+        heapIndices[0] = index;
+        heapScores[0] = score;
+        siftDown(heapIndices, heapScores, 0, heapSize);
+      }
+    }
+
+    // popping the worst entry first fills the result from the back
+    var selectedIndices = new int[heapSize];
+    var selectedScores = new double[heapSize];
+    for (int last = heapSize - 1; last >= 0; last--) {
+      selectedIndices[last] = heapIndices[0];
+      selectedScores[last] = heapScores[0];
+      heapIndices[0] = heapIndices[last];
+      heapScores[0] = heapScores[last];
+      siftDown(heapIndices, heapScores, 0, last);
+    }
+
+    var boundaryTies = 0;
+    if (heapSize > 0 && countScore != null) {
+      boundaryTies = countScore.applyAsInt(selectedScores[heapSize - 1]);
+    } else if (heapSize > 0) {
+      var boundary = selectedScores[heapSize - 1];
+      for (int c = from; c < to; c++) {
+        if (Double.compare(scores[candidates == null ? c : candidates[c]], boundary) == 0) {
+          boundaryTies++;
+        }
+      }
+    }
+    return new TopK(selectedIndices, selectedScores, boundaryTies);
+  }
+
+  /**
+   * Select the k best entities from the scores of their equivalence classes. Only classes are
+   * ordered; entities are then taken class group by class group, where a group gathers the classes
+   * sharing a score and its members are merged by index, so the result is the same as selecting on
+   * the per-entity scores.
+   */
+  public static TopK select(double[] classScores, EntityClasses classes, int k) {
+    var firstMembers = new int[classes.getClassCount()];
+    for (int c = 0; c < firstMembers.length; c++) {
+      firstMembers[c] = classes.getClassSize(c) == 0 ? Integer.MAX_VALUE
+          : classes.members(c).nextInt();
+    }
+    var order = IntStream.range(0, firstMembers.length)
+        .boxed()
+        .sorted((a, b) -> a.equals(b) ? 0 : isBetter(classScores[a], firstMembers[a],
+            classScores[b], firstMembers[b]) ? -1 : 1)
+        .mapToInt(Integer::intValue)
+        .toArray();
+    return selectOrdered(order, classScores, classes, k);
+  }
+
+  /**
+   * Expand the k best entities from classes already in ranking order. The order may stop early,
+   * but must then hold every class sharing the score of the last selected entity, so that ties at
+   * the boundary are counted.
+   */
+  public static TopK selectOrdered(int[] order, double[] classScores, EntityClasses classes,
+      int k) {
+    var capacity = Math.max(0, Math.min(k, classes.getEntityCount()));
+    var indices = new int[capacity];
+    var scores = new double[capacity];
+    var denseRanks = new int[capacity];
+    var minRanks = new int[capacity];
+    var averageRanks = new double[capacity];
+
+    var filled = 0;
+    var dense = 0;
+    var ranked = 0;
+    var groupStart = 0;
+    while (filled < capacity && groupStart < order.length) {
+      var score = classScores[order[groupStart]];
+      var groupEnd = groupStart + 1;
+      var ties = classes.getClassSize(order[groupStart]);
+      while (groupEnd < order.length
+          && Double.compare(classScores[order[groupEnd]], score) == 0) {
+        ties += classes.getClassSize(order[groupEnd++]);
+      }
+      if (ties == 0) {
+        groupStart = groupEnd;
+        continue;
+      }
+      dense++;
+
+      // k-way merge of the members of the group, by index
+      var members = new PrimitiveIterator.OfInt[groupEnd - groupStart];
+      var heads = new int[members.length];
+      for (int c = 0; c < members.length; c++) {
+        members[c] = classes.members(order[groupStart + c]);
+        heads[c] = members[c].hasNext() ? members[c].nextInt() : Integer.MAX_VALUE;
+      }
+      for (int taken = 0; taken < ties && filled < capacity; taken++) {
+        var best = 0;
+        for (int c = 1; c < heads.length; c++) {
+          if (heads[c] < heads[best]) {
+            best = c;
+          }
+        }
+        indices[filled] = heads[best];
+        heads[best] = members[best].hasNext() ? members[best].nextInt() : Integer.MAX_VALUE;
+        scores[filled] = score;
+        denseRanks[filled] = dense;
+        minRanks[filled] = ranked + 1;
+        averageRanks[filled] = ranked + 1 + (ties - 1) / 2.0;
+        filled++;
+      }
+      ranked += ties;
+      groupStart = groupEnd;
+    }
+    if (filled < capacity) {
+      return new TopK(Arrays.copyOf(indices, filled), Arrays.copyOf(scores, filled),
+          Arrays.copyOf(denseRanks, filled), Arrays.copyOf(minRanks, filled),
+          Arrays.copyOf(averageRanks, filled));
+    }
+    return new TopK(indices, scores, denseRanks, minRanks, averageRanks);
+  }
+
+  /**
+   * Ranking order: higher score first, lower index first among equal scores
+   */
+  public static boolean isBetter(double score, int index, double otherScore, int otherIndex) {
+    var byScore = Double.compare(score, otherScore);
+    return byScore > 0 || (byScore == 0 && index < otherIndex);
+  }
+
+  private static void siftUp(int[] indices, double[] scores, int position) {
+    while (position > 0) {
+      var parent = (position - 1) >>> 1;
+      if (!isBetter(scores[parent], indices[parent], scores[position], indices[position])) {
+        return;
+      }
+      swap(indices, scores, parent, position);
+      position = parent;
+    }
+  }
+
+  private static void siftDown(int[] indices, double[] scores, int position, int size) {
+    while (true) {
+      var worst = position;
+      var left = 2 * position + 1;
+      var right = left + 1;
+      if (left < size && isBetter(scores[worst], indices[worst], scores[left], indices[left])) {
+        worst = left;
+      }
+      if (right < size && isBetter(scores[worst], indices[worst], scores[right], indices[right])) {
+        worst = right;
+      }
+      if (worst == position) {
+        return;
+      }
+      swap(indices, scores, worst, position);
+      position = worst;
+    }
+  }
+
+  private static void swap(int[] indices, double[] scores, int i, int j) {
+    var index = indices[i];
+    indices[i] = indices[j];
+    indices[j] = index;
+    var score = scores[i];
+    scores[i] = scores[j];
+    scores[j] = score;
+  }
+
+  public int size() {
+    return indices.length;
+  }
+
+  /**
+   * @return the index, in the scored column, of the entry at the given position
+   */
+  public int getIndex(int position) {
+    return indices[position];
+  }
+
+  public double getScore(int position) {
+    return scores[position];
+  }
+
+  public int getDenseRank(int position) {
+    return denseRanks[position];
+  }
+
+  public int getMinRank(int position) {
+    return minRanks[position];
+  }
+
+  public double getAverageRank(int position) {
+    return averageRanks[position];
+  }
+}
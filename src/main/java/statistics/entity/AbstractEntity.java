@@ -22,6 +22,12 @@ public interface AbstractEntity {
 
   int getTotalNumberOfTests();
 
+  /**
+   * Dense id of the entity identity in its parent program, see {@link EntitySymbolTable}; -1
+   * while the entity is in no program
+   */
+  int getId();
+
   String getName();
 
   String getQualifiedName();
@@ -47,4 +53,6 @@ public interface AbstractEntity {
   Spectrum toSpectrum();
 
   Double getRankingScoreByAlgorithm(RankingAlgorithm algorithm);
+
+  void setRankingScoreByAlgorithm(RankingAlgorithm algorithm, Double score);
 }
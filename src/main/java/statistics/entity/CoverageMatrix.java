@@ -0,0 +1,201 @@
+package statistics.entity;
+
+import statistics.algorithm.SpectrumColumns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Bitset view of the coverage of a program. Test ids are those of the {@link TestRegistry} of the
+ * program, and the rows are the compressed {@link CoverageRow}s the entities keep their coverage in,
+ * both read in place; only the dense numbering of the entities is the matrix's own, so building it
+ * after the coverage changed costs one pass over the entities. ef and ep are the counters the
+ * entities keep, equal to |row & failedMask| and |row| - ef.
+ *
+ * <p>A test standing for several coverage-identical ones, see {@link TestCase#getMultiplicity()},
+ * is counted with its multiplicity as weight; the counts are then sums of weights instead of
+ * cardinalities.
+ */
+public class CoverageMatrix {
+
+  private final Program program;
+  private final TestRegistry tests;
+  private final List<AbstractEntity> entities;
+  private final AnalysisLevel[] levels;
+  private final CoverageRow[] rows;
+  /* symbol table id => entity id, -1 for identities not in the program */
+  private final int[] entityIds;
+
+  private CoverageMatrix(Program program) {
+    this.program = program;
+    tests = program.getTestRegistry();
+    entities = new ArrayList<>(program.getEntitySet());
+    levels = new AnalysisLevel[entities.size()];
+    rows = new CoverageRow[entities.size()];
+    entityIds = new int[program.getSymbolTable().getEntityCount()];
+    Arrays.fill(entityIds, -1);
+    for (int e = 0; e < rows.length; e++) {
+      var entity = (ExecutionEntity) entities.get(e);
+      levels[e] = entity.getType();
+      rows[e] = entity.getCoverageRow();
+      entityIds[entity.getId()] = e;
+    }
+  }
+
+  /**
+   * View the coverage of a program, whose entities are all in it
+   */
+  public static CoverageMatrix of(Program program) {
+    return new CoverageMatrix(program);
+  }
+
+  public int getTestCount() {
+    return tests.size();
+  }
+
+  public int getEntityCount() {
+    return entities.size();
+  }
+
+  public int getTestId(TestCase test) {
+    return tests.getId(test);
+  }
+
+  public int getEntityId(AbstractEntity entity) {
+    var id = entity.getId();
+    return entity.getParentProgram() == program && id >= 0 && id < entityIds.length
+        ? entityIds[id] : -1;
+  }
+
+  public TestCase getTest(int testId) {
+    return tests.getTest(testId);
+  }
+
+  public AbstractEntity getEntity(int entityId) {
+    return entities.get(entityId);
+  }
+
+  /**
+   * Entities in id order
+   */
+  public List<AbstractEntity> getEntities() {
+    return Collections.unmodifiableList(entities);
+  }
+
+  public AnalysisLevel getLevel(int entityId) {
+    return levels[entityId];
+  }
+
+  public boolean isPassed(int testId) {
+    return tests.isPassed(testId);
+  }
+
+  public int getWeight(int testId) {
+    return tests.getWeight(testId);
+  }
+
+  /**
+   * Word w of the bits of the tests covering an entity; words past the test count are zero
+   */
+  long getRowWord(int entityId, int w) {
+    return rows[entityId].getWord(w);
+  }
+
+  public CoverageRow getRow(int entityId) {
+    return rows[entityId];
+  }
+
+  public boolean isCovered(int entityId, int testId) {
+    return rows[entityId].contains(testId);
+  }
+
+  public int getFailedCount(int entityId) {
+    return entities.get(entityId).getTotalNumberOfFailedTests();
+  }
+
+  public int getPassedCount(int entityId) {
+    return entities.get(entityId).getTotalNumberOfPassedTests();
+  }
+
+  /**
+   * Ids of the tests covering an entity, in increasing order
+   */
+  public int[] getTestIds(int entityId) {
+    return rows[entityId].toArray();
+  }
+
+  /**
+   * Ids of the entities covered by a test, in increasing order; this is a column scan
+   */
+  public int[] getEntityIds(int testId) {
+    return IntStream.range(0, entities.size())
+        .filter(e -> rows[e].contains(testId))
+        .toArray();
+  }
+
+  /**
+   * Number of failed and passed tests covering at least one entity of each level
+   */
+  private Map<AnalysisLevel, long[]> countTestsByLevel() {
+    var words = Math.max(1, (tests.size() + 63) >>> 6);
+    var failedMask = Arrays.copyOf(tests.getFailedMask(), words);
+    Map<AnalysisLevel, long[]> levelMasks = new EnumMap<>(AnalysisLevel.class);
+    for (int e = 0; e < rows.length; e++) {
+      if (levels[e] == null) {
+        continue;
+      }
+      rows[e].orInto(levelMasks.computeIfAbsent(levels[e], level -> new long[words]));
+    }
+
+    Map<AnalysisLevel, long[]> totals = new EnumMap<>(AnalysisLevel.class);
+    levelMasks.forEach((level, mask) -> {
+      long failed = 0;
+      long passed = 0;
+      for (int w = 0; w < words; w++) {
+        failed += countWord(w, mask[w] & failedMask[w]);
+        passed += countWord(w, mask[w] & ~failedMask[w]);
+      }
+      totals.put(level, new long[]{failed, passed});
+    });
+    return totals;
+  }
+
+  /**
+   * Weight of the tests set in word w of a test mask
+   */
+  private long countWord(int w, long bits) {
+    if (!tests.isWeighted()) {
+      return Long.bitCount(bits);
+    }
+    long count = 0;
+    for (; bits != 0; bits &= bits - 1) {
+      count += getWeight((w << 6) + Long.numberOfTrailingZeros(bits));
+    }
+    return count;
+  }
+
+  /**
+   * Spectra of all entities, in id order; nf and np are taken per entity level
+   */
+  public SpectrumColumns toSpectrumColumns() {
+    var totals = countTestsByLevel();
+    var size = entities.size();
+    var ef = new double[size];
+    var ep = new double[size];
+    var nf = new double[size];
+    var np = new double[size];
+    for (int e = 0; e < size; e++) {
+      var levelTotals = totals.getOrDefault(levels[e], new long[2]);
+      ef[e] = getFailedCount(e);
+      ep[e] = getPassedCount(e);
+      nf[e] = levelTotals[0];
+      np[e] = levelTotals[1];
+    }
+    return new SpectrumColumns(ef, ep, nf, np);
+  }
+}
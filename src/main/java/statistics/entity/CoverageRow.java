@@ -0,0 +1,490 @@
+package statistics.entity;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of test ids covering one entity, in the manner of roaring bitmaps. Ids are split
+ * by their high 16 bits into chunks of 65536; each chunk is stored in whichever container is
+ * smallest for its density:
+ *
+ * <ul>
+ * <li>an array of sorted low bits, for up to 4096 ids</li>
+ * <li>a bitmap of 1024 words, above that</li>
+ * <li>a list of runs, after {@link #runOptimize()}, when runs are smaller than both</li>
+ * </ul>
+ *
+ * <p>So a statement hit by a handful of tests costs a few bytes, and one hit by nearly every test
+ * costs a few runs. Cardinalities under a dense mask, such as the failed-test mask of a {@link
+ * CoverageMatrix}, are computed per container without decoding the ids.
+ */
+public final class CoverageRow {
+
+  private static final int ARRAY_MAX = 4096;
+  private static final int CHUNK_WORDS = 1024;
+
+  private char[] keys = new char[0];
+  private Container[] containers = new Container[0];
+  private int size;
+
+  public void add(int id) {
+    var key = (char) (id >>> 16);
+    var index = indexOf(key);
+    if (index < 0) {
+      index = -index - 1;
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+        containers = Arrays.copyOf(containers, keys.length);
+      }
+      System.arraycopy(keys, index, keys, index + 1, size - index);
+      System.arraycopy(containers, index, containers, index + 1, size - index);
+      keys[index] = key;
+      containers[index] = new ArrayContainer();
+      size++;
+    }
+    containers[index] = containers[index].add((char) id);
+  }
+
+  public boolean contains(int id) {
+    var index = indexOf((char) (id >>> 16));
+    return index >= 0 && containers[index].contains((char) id);
+  }
+
+  public int cardinality() {
+    var cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      cardinality += containers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  /**
+   * Number of ids of this row whose bit is set in a dense mask over ids
+   */
+  public int andCardinality(long[] mask) {
+    var cardinality = 0;
+    for (int i = 0; i < size; i++) {
+      var wordOffset = keys[i] * CHUNK_WORDS;
+      if (wordOffset >= mask.length) {
+        break;
+      }
+      cardinality += containers[i].andCardinality(mask, wordOffset);
+    }
+    return cardinality;
+  }
+
+  /**
+   * Set the bits of the ids of this row in a dense mask long enough to hold them
+   */
+  public void orInto(long[] mask) {
+    for (int i = 0; i < size; i++) {
+      containers[i].orInto(mask, keys[i] * CHUNK_WORDS);
+    }
+  }
+
+  /**
+   * Word w of the dense form of this row
+   */
+  public long getWord(int w) {
+    var index = indexOf((char) (w >>> 10));
+    return index < 0 ? 0 : containers[index].word(w & (CHUNK_WORDS - 1));
+  }
+
+  public void forEach(IntConsumer action) {
+    for (int i = 0; i < size; i++) {
+      containers[i].forEach(keys[i] << 16, action);
+    }
+  }
+
+  /**
+   * Ids in increasing order
+   */
+  public int[] toArray() {
+    var ids = new int[cardinality()];
+    var next = new int[1];
+    forEach(id -> ids[next[0]++] = id);
+    return ids;
+  }
+
+  /**
+   * Move every container to runs where that is smaller, and drop the room kept for additions; call
+   * once a row is complete
+   */
+  public CoverageRow runOptimize() {
+    keys = Arrays.copyOf(keys, size);
+    containers = Arrays.copyOf(containers, size);
+    for (int i = 0; i < size; i++) {
+      containers[i] = containers[i].optimize();
+    }
+    return this;
+  }
+
+  /**
+   * Approximate bytes held by the containers, to compare encodings
+   */
+  public long getSizeInBytes() {
+    long bytes = 3L * keys.length;
+    for (int i = 0; i < size; i++) {
+      bytes += containers[i].sizeInBytes();
+    }
+    return bytes;
+  }
+
+  private int indexOf(char key) {
+    return Arrays.binarySearch(keys, 0, size, key);
+  }
+
+  /**
+   * Ids in one chunk of 65536, addressed by their low 16 bits
+   */
+  private abstract static class Container {
+
+    /**
+     * @return this container or the one replacing it
+     */
+    abstract Container add(char low);
+
+    abstract boolean contains(char low);
+
+    abstract int cardinality();
+
+    abstract int andCardinality(long[] mask, int wordOffset);
+
+    abstract void orInto(long[] mask, int wordOffset);
+
+    abstract long word(int w);
+
+    abstract void forEach(int high, IntConsumer action);
+
+    abstract int sizeInBytes();
+
+    abstract int countRuns();
+
+    /**
+     * The smallest container holding the same ids, without room for additions
+     */
+    Container optimize() {
+      var runBytes = 4 * countRuns();
+      var cardinality = cardinality();
+      var plainBytes = cardinality <= ARRAY_MAX ? 2 * cardinality : 8 * CHUNK_WORDS;
+      if (runBytes < plainBytes) {
+        return this instanceof RunContainer ? this : RunContainer.of(this);
+      }
+      if (this instanceof BitmapContainer) {
+        return this;
+      }
+      return cardinality <= ARRAY_MAX ? ArrayContainer.of(this) : BitmapContainer.of(this);
+    }
+  }
+
+  private static final class ArrayContainer extends Container {
+
+    private char[] values = new char[4];
+    private int cardinality;
+
+    static ArrayContainer of(Container container) {
+      var array = new ArrayContainer();
+      array.values = new char[container.cardinality()];
+      container.forEach(0, id -> array.values[array.cardinality++] = (char) id);
+      return array;
+    }
+
+    @Override
+    Container add(char low) {
+      var index = Arrays.binarySearch(values, 0, cardinality, low);
+      if (index >= 0) {
+        return this;
+      }
+      if (cardinality == ARRAY_MAX) {
+        return BitmapContainer.of(this).add(low);
+      }
+      index = -index - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    boolean contains(char low) {
+      return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int andCardinality(long[] mask, int wordOffset) {
+      var count = 0;
+      for (int i = 0; i < cardinality; i++) {
+        var word = wordOffset + (values[i] >>> 6);
+        if (word >= mask.length) {
+          break;
+        }
+        if ((mask[word] & (1L << values[i])) != 0) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] mask, int wordOffset) {
+      for (int i = 0; i < cardinality; i++) {
+        mask[wordOffset + (values[i] >>> 6)] |= 1L << values[i];
+      }
+    }
+
+    @Override
+    long word(int w) {
+      var from = Arrays.binarySearch(values, 0, cardinality, (char) (w << 6));
+      from = from < 0 ? -from - 1 : from;
+      long word = 0;
+      for (int i = from; i < cardinality && values[i] >>> 6 == w; i++) {
+        word |= 1L << values[i];
+      }
+      return word;
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int i = 0; i < cardinality; i++) {
+        action.accept(high | values[i]);
+      }
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 2 * values.length;
+    }
+
+    @Override
+    int countRuns() {
+      var runs = 0;
+      for (int i = 0; i < cardinality; i++) {
+        if (i == 0 || values[i] != values[i - 1] + 1) {
+          runs++;
+        }
+      }
+      return runs;
+    }
+  }
+
+  private static final class BitmapContainer extends Container {
+
+    private final long[] words = new long[CHUNK_WORDS];
+    private int cardinality;
+
+    static BitmapContainer of(Container container) {
+      var bitmap = new BitmapContainer();
+      container.orInto(bitmap.words, 0);
+      bitmap.cardinality = container.cardinality();
+      return bitmap;
+    }
+
+    @Override
+    Container add(char low) {
+      var before = words[low >>> 6];
+      words[low >>> 6] |= 1L << low;
+      if (before != words[low >>> 6]) {
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    boolean contains(char low) {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int andCardinality(long[] mask, int wordOffset) {
+      var count = 0;
+      var end = Math.min(CHUNK_WORDS, mask.length - wordOffset);
+      for (int w = 0; w < end; w++) {
+        count += Long.bitCount(words[w] & mask[wordOffset + w]);
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] mask, int wordOffset) {
+      var end = Math.min(CHUNK_WORDS, mask.length - wordOffset);
+      for (int w = 0; w < end; w++) {
+        mask[wordOffset + w] |= words[w];
+      }
+    }
+
+    @Override
+    long word(int w) {
+      return words[w];
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int w = 0; w < CHUNK_WORDS; w++) {
+        var bits = words[w];
+        while (bits != 0) {
+          action.accept(high | (w << 6) + Long.numberOfTrailingZeros(bits));
+          bits &= bits - 1;
+        }
+      }
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 8 * CHUNK_WORDS;
+    }
+
+    @Override
+    int countRuns() {
+      var runs = 0;
+      long previous = 0;
+      for (long word : words) {
+        // a run starts at every set bit whose lower neighbour is clear
+        runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+        previous = word;
+      }
+      return runs;
+    }
+  }
+
+  /**
+   * Runs as (start, length - 1) pairs, sorted and disjoint
+   */
+  private static final class RunContainer extends Container {
+
+    private final char[] runs;
+    private final int cardinality;
+
+    private RunContainer(char[] runs, int cardinality) {
+      this.runs = runs;
+      this.cardinality = cardinality;
+    }
+
+    static RunContainer of(Container container) {
+      var runs = new char[2 * container.countRuns()];
+      var state = new int[]{-1, -2};
+      container.forEach(0, id -> {
+        if (id != state[1] + 1) {
+          state[0] += 2;
+          runs[state[0] - 1] = (char) id;
+        }
+        runs[state[0]] = (char) (id - runs[state[0] - 1]);
+        state[1] = id;
+      });
+      return new RunContainer(runs, container.cardinality());
+    }
+
+    @Override
+    Container add(char low) {
+      if (contains(low)) {
+        return this;
+      }
+      Container plain = cardinality < ARRAY_MAX ? ArrayContainer.of(this) : BitmapContainer.of(this);
+      return plain.add(low);
+    }
+
+    @Override
+    boolean contains(char low) {
+      var lowRun = 0;
+      var highRun = runs.length / 2 - 1;
+      while (lowRun <= highRun) {
+        var middle = (lowRun + highRun) >>> 1;
+        var start = runs[2 * middle];
+        if (low < start) {
+          highRun = middle - 1;
+        } else if (low > start + runs[2 * middle + 1]) {
+          lowRun = middle + 1;
+        } else {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    int andCardinality(long[] mask, int wordOffset) {
+      var count = 0;
+      for (int r = 0; r < runs.length; r += 2) {
+        int start = runs[r];
+        var end = start + runs[r + 1];
+        for (int w = start >>> 6; w <= end >>> 6; w++) {
+          if (wordOffset + w >= mask.length) {
+            return count;
+          }
+          count += Long.bitCount(mask[wordOffset + w] & rangeMask(w, start, end));
+        }
+      }
+      return count;
+    }
+
+    @Override
+    void orInto(long[] mask, int wordOffset) {
+      for (int r = 0; r < runs.length; r += 2) {
+        int start = runs[r];
+        var end = start + runs[r + 1];
+        for (int w = start >>> 6; w <= end >>> 6; w++) {
+          mask[wordOffset + w] |= rangeMask(w, start, end);
+        }
+      }
+    }
+
+    /**
+     * Bits of word w that lie in [start, end]
+     */
+    private static long rangeMask(int w, int start, int end) {
+      var from = Math.max(start, w << 6) & 63;
+      var to = Math.min(end, (w << 6) + 63) & 63;
+      return (-1L >>> (63 - to)) & (-1L << from);
+    }
+
+    @Override
+    long word(int w) {
+      long word = 0;
+      for (int r = 0; r < runs.length; r += 2) {
+        int start = runs[r];
+        var end = start + runs[r + 1];
+        if (start >>> 6 <= w && w <= end >>> 6) {
+          word |= rangeMask(w, start, end);
+        }
+      }
+      return word;
+    }
+
+    @Override
+    void forEach(int high, IntConsumer action) {
+      for (int r = 0; r < runs.length; r += 2) {
+        int start = runs[r];
+        for (int id = start; id <= start + runs[r + 1]; id++) {
+          action.accept(high | id);
+        }
+      }
+    }
+
+    @Override
+    int sizeInBytes() {
+      return 2 * runs.length;
+    }
+
+    @Override
+    int countRuns() {
+      return runs.length / 2;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package statistics.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the entity identities of one program. Every distinct qualified name gets a dense
+ * int id, and every distinct (qualified name, line, level) gets a dense entity id, so that entities
+ * of the program compare on one int instead of on strings. Lookups of known symbols are lock free;
+ * new symbols are numbered under a lock.
+ *
+ * <p>A table lives as long as its program, see {@link Program#getSymbolTable()}. An entity leaving
+ * the program and coming back, as when watch mode patches a class, gets its old id again, so the
+ * table grows only with the identities the program ever held.
+ */
+public class EntitySymbolTable {
+
+  private static final int LEVELS = AnalysisLevel.values().length + 1;
+
+  private final Map<String, Integer> fqnIds = new ConcurrentHashMap<>();
+  private final List<String> fqns = new ArrayList<>();
+
+  /* (fqn id, level, line) => entity id */
+  private final Map<Long, Integer> entityIds = new ConcurrentHashMap<>();
+  private int[] entityFqns = new int[1024];
+  private int[] entityLines = new int[1024];
+  private byte[] entityLevels = new byte[1024];
+  private int entityCount;
+
+  public int fqnIdOf(String qualifiedName) {
+    var id = fqnIds.get(qualifiedName);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      return fqnIds.computeIfAbsent(qualifiedName, fqn -> {
+        fqns.add(fqn);
+        return fqns.size() - 1;
+      });
+    }
+  }
+
+  /**
+   * @return the id of the entity, assigned on first lookup
+   */
+  public int idOf(String qualifiedName, int lineNumber, AnalysisLevel level) {
+    var fqnId = fqnIdOf(qualifiedName);
+    var levelCode = level == null ? 0 : level.ordinal() + 1;
+    var key = ((long) (fqnId * LEVELS + levelCode) << 32) | (lineNumber & 0xffffffffL);
+    var id = entityIds.get(key);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      return entityIds.computeIfAbsent(key, k -> {
+        if (entityCount == entityFqns.length) {
+          entityFqns = Arrays.copyOf(entityFqns, entityCount * 2);
+          entityLines = Arrays.copyOf(entityLines, entityCount * 2);
+          entityLevels = Arrays.copyOf(entityLevels, entityCount * 2);
+        }
+        entityFqns[entityCount] = fqnId;
+        entityLines[entityCount] = lineNumber;
+        entityLevels[entityCount] = (byte) levelCode;
+        return entityCount++;
+      });
+    }
+  }
+
+  public synchronized String getQualifiedName(int entityId) {
+    return fqns.get(entityFqns[entityId]);
+  }
+
+  public synchronized int getLineNumber(int entityId) {
+    return entityLines[entityId];
+  }
+
+  public synchronized AnalysisLevel getLevel(int entityId) {
+    var levelCode = entityLevels[entityId];
+    return levelCode == 0 ? null : AnalysisLevel.values()[levelCode - 1];
+  }
+
+  public synchronized int getEntityCount() {
+    return entityCount;
+  }
+
+  public synchronized int getQualifiedNameCount() {
+    return fqns.size();
+  }
+}
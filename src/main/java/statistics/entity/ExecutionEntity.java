@@ -1,5 +1,6 @@
 package statistics.entity;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -12,6 +13,7 @@ import statistics.algorithm.Spectrum;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
 
@@ -28,9 +30,37 @@ public class ExecutionEntity implements AbstractEntity {
   String qualifiedName;
   AnalysisLevel level;
   int lineNumber;
+  /* execution records while the entity is in no program, null while it is in one */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
   Map<TestCase, Integer> executionCount = new HashMap<>();
+  /* ids, in the test registry of the parent program, of the tests executing the entity */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  CoverageRow row;
+  /* test id => execution count for the tests of the row not executing the entity once, null if
+     there is none */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  Map<Integer, Integer> counts;
   Program parentProgram;
   Map<RankingAlgorithm, Double> ranks = new HashMap<>();
+  /* id in the symbol table of the parent program, -1 while detached */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  int id = -1;
+  /* hash of qualified name, line and level; 0 until computed */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  int hash;
+  /* ef and ep by test multiplicity while the entity is in a program, kept up to date as tests
+     join or leave the row and as the parent program reports verdict changes */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  int failedCount;
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  int passedCount;
 
   public static AbstractEntity createEntity(String fqn, int lineNumber,
       AnalysisLevel analysisLevel) {
@@ -47,7 +77,7 @@ public class ExecutionEntity implements AbstractEntity {
   }
 
   public Double getRankScoreByAlgorithm(RankingAlgorithm algorithm) {
-    return ranks.get(algorithm);
+    return getRankingScoreByAlgorithm(algorithm);
   }
 
   public ExecutionEntity(TestCase test, String fullName, int count) {
@@ -77,41 +107,152 @@ public class ExecutionEntity implements AbstractEntity {
   }
 
   public void addTest(TestCase test, int count) {
-    executionCount.put(test, count);
+    synchronized (this) {
+      if (row == null) {
+        executionCount.put(test, count);
+      } else {
+        var tests = parentProgram.getTestRegistry();
+        var id = tests.register(test);
+        if (!row.contains(id)) {
+          row.add(id);
+          count(tests.isPassed(id), tests.getWeight(id));
+        }
+        setCount(id, count);
+      }
+    }
+    if (parentProgram != null) {
+      parentProgram.onCoverageChanged();
+    }
+  }
+
+  /**
+   * Renumber the tests of the row after tests left the test registry of the parent program,
+   * dropping the records of those that left
+   *
+   * @param remap old test id => new test id, -1 for a test that left
+   */
+  void remapTests(int[] remap) {
+    synchronized (this) {
+      if (row == null) {
+        return;
+      }
+      var ids = row.toArray();
+      var oldCounts = counts;
+      row = new CoverageRow();
+      counts = null;
+      for (int id : ids) {
+        if (remap[id] >= 0) {
+          row.add(remap[id]);
+          setCount(remap[id], oldCounts == null ? 1 : oldCounts.getOrDefault(id, 1));
+        }
+      }
+      row.runOptimize();
+      recount();
+    }
+    parentProgram.onCoverageChanged();
+  }
+
+  /**
+   * Move the counts of a test of the row, by its id in the test registry of the parent program, from
+   * its old verdict and multiplicity to its current ones
+   */
+  synchronized void onTestChanged(int testId, boolean wasPassed, int oldMultiplicity) {
+    if (row == null || !row.contains(testId)) {
+      return;
+    }
+    var tests = parentProgram.getTestRegistry();
+    count(wasPassed, -oldMultiplicity);
+    count(tests.isPassed(testId), tests.getWeight(testId));
+  }
+
+  private void count(boolean passed, int weight) {
+    if (passed) {
+      passedCount += weight;
+    } else {
+      failedCount += weight;
+    }
+  }
+
+  private void recount() {
+    var tests = parentProgram.getTestRegistry();
+    failedCount = 0;
+    passedCount = 0;
+    row.forEach(id -> count(tests.isPassed(id), tests.getWeight(id)));
+  }
+
+  /**
+   * Ids, in the test registry of the parent program, of the tests executing this entity; null
+   * while it is in no program
+   */
+  CoverageRow getCoverageRow() {
+    return row;
+  }
+
+  private void setCount(int testId, int count) {
+    if (count != 1) {
+      if (counts == null) {
+        counts = new HashMap<>();
+      }
+      counts.put(testId, count);
+    } else if (counts != null) {
+      counts.remove(testId);
+    }
+  }
+
+  private int countOf(int testId) {
+    return counts == null ? 1 : counts.getOrDefault(testId, 1);
   }
 
   @Override
-  public Set<TestCase> getAllTest() {
-    return executionCount.keySet();
+  public synchronized Set<TestCase> getAllTest() {
+    return getExecutionCount().keySet();
   }
 
   @Override
   public Set<TestCase> getFailedTests() {
-    return executionCount.keySet().stream()
+    return getAllTest().stream()
         .filter(p -> !p.isPassed())
         .collect(toSet());
   }
 
   @Override
   public Set<TestCase> getPassedTests() {
-    return executionCount.keySet().stream()
+    return getAllTest().stream()
         .filter(TestCase::isPassed)
         .collect(toSet());
   }
 
+  /**
+   * ef, kept up to date while the entity is in a program; counted from the records otherwise
+   */
   @Override
-  public int getTotalNumberOfFailedTests() {
-    return getFailedTests().size();
+  public synchronized int getTotalNumberOfFailedTests() {
+    if (row == null) {
+      return executionCount.keySet().stream()
+          .filter(test -> !test.isPassed())
+          .mapToInt(TestCase::getMultiplicity)
+          .sum();
+    }
+    return failedCount;
   }
 
+  /**
+   * ep, kept up to date while the entity is in a program; counted from the records otherwise
+   */
   @Override
-  public int getTotalNumberOfPassedTests() {
-    return getPassedTests().size();
+  public synchronized int getTotalNumberOfPassedTests() {
+    if (row == null) {
+      return executionCount.keySet().stream()
+          .filter(TestCase::isPassed)
+          .mapToInt(TestCase::getMultiplicity)
+          .sum();
+    }
+    return passedCount;
   }
 
   @Override
-  public int getTotalNumberOfTests() {
-    return executionCount.keySet().size();
+  public synchronized int getTotalNumberOfTests() {
+    return getTotalNumberOfFailedTests() + getTotalNumberOfPassedTests();
   }
 
   @Override
@@ -125,18 +266,29 @@ public class ExecutionEntity implements AbstractEntity {
   }
 
   @Override
-  public boolean isExecutedByTest(TestCase test) {
-    return executionCount.containsKey(test);
+  public synchronized boolean isExecutedByTest(TestCase test) {
+    if (row == null) {
+      return executionCount.containsKey(test);
+    }
+    var id = parentProgram.getTestRegistry().getId(test);
+    return id >= 0 && row.contains(id);
   }
 
+  /**
+   * @return how many times the test executed this entity, 0 if it did not
+   */
   @Override
-  public int getExecutionCountByTest(TestCase test) {
-    return executionCount.get(test);
+  public synchronized int getExecutionCountByTest(TestCase test) {
+    if (row == null) {
+      return executionCount.getOrDefault(test, 0);
+    }
+    var id = parentProgram.getTestRegistry().getId(test);
+    return id >= 0 && row.contains(id) ? countOf(id) : 0;
   }
 
   public void print() {
     System.out.println("=>" + level.levelName + ": " + qualifiedName);
-    executionCount
+    getExecutionCount()
         .forEach((key, value) -> System.out.println(
             "[executed by] " + key.getQualifyName() + ": " + value + ": " + (key.isPassed()
                 ? "[PASSED]" : "[FAILED] *")));
@@ -151,6 +303,53 @@ public class ExecutionEntity implements AbstractEntity {
     return parentProgram;
   }
 
+  /**
+   * Join a program, taking the id of this identity in its symbol table and its copy of the
+   * qualified name, or leave it with a null program. The execution records move to a row over the
+   * test ids of the program, registering their tests, or back to a map when leaving.
+   */
+  @Override
+  public synchronized void setParentProgram(Program program) {
+    var records = getExecutionCount();
+    parentProgram = program;
+    resolveId();
+    row = null;
+    counts = null;
+    executionCount = null;
+    if (program == null) {
+      executionCount = records;
+    } else {
+      fillRow(records);
+    }
+  }
+
+  private void fillRow(Map<TestCase, Integer> records) {
+    var tests = parentProgram.getTestRegistry();
+    var ids = new int[records.size()];
+    var next = 0;
+    for (Map.Entry<TestCase, Integer> record : records.entrySet()) {
+      ids[next] = tests.register(record.getKey());
+      setCount(ids[next++], record.getValue());
+    }
+    Arrays.sort(ids);
+    row = new CoverageRow();
+    for (int id : ids) {
+      row.add(id);
+    }
+    row.runOptimize();
+    recount();
+  }
+
+  private void resolveId() {
+    if (parentProgram == null || qualifiedName == null) {
+      id = -1;
+      return;
+    }
+    var symbols = parentProgram.getSymbolTable();
+    id = symbols.idOf(qualifiedName, lineNumber, level);
+    qualifiedName = symbols.getQualifiedName(id);
+  }
+
   @Override
   public void rankAll() {
     ranks = Arrays.stream(RankingAlgorithm.values())
@@ -173,27 +372,90 @@ public class ExecutionEntity implements AbstractEntity {
 
   @Override
   public Double getRankingScoreByAlgorithm(RankingAlgorithm algorithm) {
-    return ranks.get(algorithm);
+    var indexed = parentProgram == null ? null
+        : parentProgram.getIndexedScore(this, algorithm);
+    return indexed != null ? indexed : ranks.get(algorithm);
   }
 
+  @Override
+  public void setRankingScoreByAlgorithm(RankingAlgorithm algorithm, Double score) {
+    ranks.put(algorithm, score);
+  }
+
+  /**
+   * Dense id of this entity in the {@link EntitySymbolTable} of its parent program, -1 while it
+   * has none; entities of a program with the same qualified name, line and level share it
+   */
+  public int getId() {
+    return id;
+  }
+
+  public void setQualifiedName(String qualifiedName) {
+    this.qualifiedName = qualifiedName;
+    hash = 0;
+    resolveId();
+  }
+
+  public void setLineNumber(int lineNumber) {
+    this.lineNumber = lineNumber;
+    hash = 0;
+    resolveId();
+  }
+
+  public void setLevel(AnalysisLevel level) {
+    this.level = level;
+    hash = 0;
+    resolveId();
+  }
+
+  /**
+   * Entities are equal by qualified name, line and level; two entities of one program compare
+   * their ids only
+   */
   @Override
   public boolean equals(Object entity) {
-    return this.getType().equals(((ExecutionEntity) entity).getType())
-        && this.qualifiedName.equals(((ExecutionEntity) entity).getQualifiedName())
-        && this.lineNumber == ((ExecutionEntity) entity).getLineNumber();
+    if (this == entity) {
+      return true;
+    }
+    if (!(entity instanceof ExecutionEntity)) {
+      return false;
+    }
+    var other = (ExecutionEntity) entity;
+    if (id >= 0 && other.id >= 0 && parentProgram == other.parentProgram) {
+      return id == other.id;
+    }
+    return hashCode() == other.hashCode() && lineNumber == other.lineNumber
+        && level == other.level && Objects.equals(qualifiedName, other.qualifiedName);
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + (qualifiedName + lineNumber + getType().toString()).hashCode();
-    return result;
+    if (hash == 0) {
+      hash = Objects.hash(qualifiedName, lineNumber, level);
+    }
+    return hash;
   }
 
-  @Override
-  public void setParentProgram(Program program) {
-    parentProgram = program;
+  /**
+   * @return test => times it executed this entity; a copy while the entity is in a program
+   */
+  public synchronized Map<TestCase, Integer> getExecutionCount() {
+    if (row == null) {
+      return executionCount;
+    }
+    var tests = parentProgram.getTestRegistry();
+    Map<TestCase, Integer> records = new HashMap<>(row.cardinality() * 2);
+    row.forEach(id -> records.put(tests.getTest(id), countOf(id)));
+    return records;
+  }
+
+  public synchronized void setExecutionCount(Map<TestCase, Integer> executionCount) {
+    if (parentProgram == null) {
+      this.executionCount = executionCount;
+    } else {
+      counts = null;
+      fillRow(executionCount);
+    }
   }
 
   @Override
@@ -0,0 +1,404 @@
+package statistics.entity;
+
+import statistics.algorithm.SpectrumColumns;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Coverage of a program kept off heap in a memory-mapped file. The file holds, in order:
+ *
+ * <ul>
+ * <li>a header with the counts, the offset of the rows and the per-level nf/np totals</li>
+ * <li>the failed-test bitmap</li>
+ * <li>per entity: qualified name id, line, ef, ep and level</li>
+ * <li>a dictionary of the program name and version, the qualified names and the test names</li>
+ * <li>per entity, a row of bits over test ids, 8-byte aligned</li>
+ * </ul>
+ *
+ * <p>Spectra are read from the per-entity counters without touching the rows, so ranking a level
+ * only pages in its metadata, and entities are built on the heap only when asked for. Reopening
+ * a store maps the file without parsing it. The rows are mapped in segments of whole rows, so a
+ * store may be larger than one mapping.
+ */
+public class MappedCoverageStore implements SpectrumSource, AutoCloseable {
+
+  private static final int MAGIC = 0x44464c43;
+  private static final int VERSION = 1;
+  private static final int LEVELS = AnalysisLevel.values().length;
+  private static final int TOTALS_OFFSET = 40;
+  private static final int HEADER_BYTES = TOTALS_OFFSET + 16 * LEVELS;
+  /* program name and version come first in the dictionary */
+  private static final int FIRST_FQN = 2;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer meta;
+  private final MappedByteBuffer[] rowSegments;
+  private final int entityCount;
+  private final int testCount;
+  private final int words;
+  private final int fqnCount;
+  private final int rowsPerSegment;
+
+  private final int fqnIdsOffset;
+  private final int linesOffset;
+  private final int failedCountsOffset;
+  private final int passedCountsOffset;
+  private final int levelsOffset;
+  private final int stringOffsetsOffset;
+  private final int stringBytesOffset;
+
+  private MappedCoverageStore(FileChannel channel) throws IOException {
+    this.channel = channel;
+    var header = channel.map(MapMode.READ_ONLY, 0, HEADER_BYTES);
+    if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+      throw new IOException("Not a coverage store of version " + VERSION);
+    }
+    entityCount = header.getInt(8);
+    testCount = header.getInt(12);
+    words = header.getInt(16);
+    fqnCount = header.getInt(20);
+    var rowsOffset = header.getLong(32);
+    if (rowsOffset > Integer.MAX_VALUE) {
+      throw new IOException("Coverage store metadata exceeds one mapping");
+    }
+
+    var layout = new Layout(entityCount, testCount, words, fqnCount, header.getLong(24));
+    fqnIdsOffset = layout.fqnIds;
+    linesOffset = layout.lines;
+    failedCountsOffset = layout.failedCounts;
+    passedCountsOffset = layout.passedCounts;
+    levelsOffset = layout.levels;
+    stringOffsetsOffset = layout.stringOffsets;
+    stringBytesOffset = layout.stringBytes;
+    meta = channel.map(MapMode.READ_ONLY, 0, rowsOffset);
+
+    rowsPerSegment = rowsPerSegment(words);
+    rowSegments = mapRows(channel, MapMode.READ_ONLY, rowsOffset, entityCount, words);
+  }
+
+  /**
+   * Map an existing store
+   */
+  public static MappedCoverageStore open(Path path) throws IOException {
+    return new MappedCoverageStore(FileChannel.open(path, StandardOpenOption.READ));
+  }
+
+  /**
+   * Write the coverage of a program to a store file, replacing any previous one, and map it. The
+   * store is written to a temporary file next to the target and moved over it, so a mapping of the
+   * previous file stays valid and no reader maps a partial store.
+   */
+  public static MappedCoverageStore write(Program program, Path path) throws IOException {
+    var directory = path.toAbsolutePath().getParent();
+    var temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    try {
+      writeTo(program, temp);
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return open(path);
+  }
+
+  private static void writeTo(Program program, Path path) throws IOException {
+    var coverage = program.getCoverageMatrix();
+    var snapshot = program.freeze();
+    var entityCount = snapshot.getEntityCount();
+    var testCount = snapshot.getTestCount();
+    var words = Math.max(1, (testCount + 63) >>> 6);
+
+    var fqnIds = new int[entityCount];
+    var lines = new int[entityCount];
+    Map<String, Integer> fqnIndex = new HashMap<>();
+    List<String> fqns = new ArrayList<>();
+    for (int e = 0; e < entityCount; e++) {
+      var entity = snapshot.getEntity(e);
+      fqnIds[e] = fqnIndex.computeIfAbsent(entity.getQualifiedName(), fqn -> {
+        fqns.add(fqn);
+        return fqns.size() - 1;
+      });
+      lines[e] = ((ExecutionEntity) entity).getLineNumber();
+    }
+
+    var strings = new byte[FIRST_FQN + fqns.size() + testCount][];
+    strings[0] = utf8(program.getName());
+    strings[1] = utf8(program.getVersion());
+    for (int f = 0; f < fqns.size(); f++) {
+      strings[FIRST_FQN + f] = utf8(fqns.get(f));
+    }
+    for (int t = 0; t < testCount; t++) {
+      strings[FIRST_FQN + fqns.size() + t] = utf8(snapshot.getTestName(t));
+    }
+    long dictionaryBytes = 0;
+    for (byte[] string : strings) {
+      dictionaryBytes += string.length;
+    }
+
+    var layout = new Layout(entityCount, testCount, words, fqns.size(), dictionaryBytes);
+    if (layout.rows > Integer.MAX_VALUE) {
+      throw new IOException("Coverage store metadata exceeds one mapping");
+    }
+
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      var meta = channel.map(MapMode.READ_WRITE, 0, layout.rows);
+      meta.putInt(0, MAGIC)
+          .putInt(4, VERSION)
+          .putInt(8, entityCount)
+          .putInt(12, testCount)
+          .putInt(16, words)
+          .putInt(20, fqns.size())
+          .putLong(24, dictionaryBytes)
+          .putLong(32, layout.rows);
+      for (AnalysisLevel level : AnalysisLevel.values()) {
+        meta.putLong(TOTALS_OFFSET + 8 * level.ordinal(), snapshot.getTotalFailedTests(level));
+        meta.putLong(TOTALS_OFFSET + 8 * (LEVELS + level.ordinal()),
+            snapshot.getTotalPassedTests(level));
+      }
+
+      for (int t = 0; t < testCount; t++) {
+        if (!snapshot.isPassed(t)) {
+          var at = HEADER_BYTES + 8 * (t >>> 6);
+          meta.putLong(at, meta.getLong(at) | 1L << t);
+        }
+      }
+      for (int e = 0; e < entityCount; e++) {
+        meta.putInt(layout.fqnIds + 4 * e, fqnIds[e]);
+        meta.putInt(layout.lines + 4 * e, lines[e]);
+        meta.putInt(layout.failedCounts + 4 * e, snapshot.getFailedCount(e));
+        meta.putInt(layout.passedCounts + 4 * e, snapshot.getPassedCount(e));
+        var level = snapshot.getLevel(e);
+        meta.put(layout.levels + e, (byte) (level == null ? 0 : level.ordinal() + 1));
+      }
+      var offset = 0;
+      for (int s = 0; s < strings.length; s++) {
+        meta.putInt(layout.stringOffsets + 4 * s, offset);
+        meta.position(layout.stringBytes + offset);
+        meta.put(strings[s]);
+        offset += strings[s].length;
+      }
+      meta.putInt(layout.stringOffsets + 4 * strings.length, offset);
+      meta.force();
+
+      var segments = mapRows(channel, MapMode.READ_WRITE, layout.rows, entityCount, words);
+      var perSegment = rowsPerSegment(words);
+      for (int e = 0; e < entityCount; e++) {
+        var segment = segments[e / perSegment];
+        var rowStart = (e % perSegment) * words * 8;
+        for (int w = 0; w < words; w++) {
+          segment.putLong(rowStart + 8 * w, coverage.getRowWord(e, w));
+        }
+      }
+      for (MappedByteBuffer segment : segments) {
+        segment.force();
+      }
+    }
+  }
+
+  private static int rowsPerSegment(int words) {
+    return Math.max(1, Integer.MAX_VALUE / (words * 8));
+  }
+
+  private static MappedByteBuffer[] mapRows(FileChannel channel, MapMode mode, long rowsOffset,
+      int entityCount, int words) throws IOException {
+    var perSegment = rowsPerSegment(words);
+    var segments = new MappedByteBuffer[(entityCount + perSegment - 1) / perSegment];
+    for (int s = 0; s < segments.length; s++) {
+      var rows = Math.min(perSegment, entityCount - s * perSegment);
+      segments[s] = channel.map(mode, rowsOffset + (long) s * perSegment * words * 8,
+          (long) rows * words * 8);
+    }
+    return segments;
+  }
+
+  private static byte[] utf8(String string) {
+    return (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+  }
+
+  public String getProgramName() {
+    return string(0);
+  }
+
+  public String getProgramVersion() {
+    return string(1);
+  }
+
+  @Override
+  public int getEntityCount() {
+    return entityCount;
+  }
+
+  @Override
+  public int getTestCount() {
+    return testCount;
+  }
+
+  @Override
+  public AnalysisLevel getLevel(int entityId) {
+    var levelCode = meta.get(levelsOffset + entityId);
+    return levelCode == 0 ? null : AnalysisLevel.values()[levelCode - 1];
+  }
+
+  public String getQualifiedName(int entityId) {
+    return string(FIRST_FQN + meta.getInt(fqnIdsOffset + 4 * entityId));
+  }
+
+  public int getLineNumber(int entityId) {
+    return meta.getInt(linesOffset + 4 * entityId);
+  }
+
+  /**
+   * A new entity with the identity of the stored one; it carries no execution records
+   */
+  @Override
+  public AbstractEntity getEntity(int entityId) {
+    return ExecutionEntity.createEntity(getQualifiedName(entityId), getLineNumber(entityId),
+        getLevel(entityId));
+  }
+
+  /**
+   * The name of an entity, as printed by the entity itself
+   */
+  public String getEntityName(int entityId) {
+    return getLevel(entityId) + ":" + getQualifiedName(entityId) + ":" + getLineNumber(entityId);
+  }
+
+  public String getTestName(int testId) {
+    return string(FIRST_FQN + fqnCount + testId);
+  }
+
+  public boolean isPassed(int testId) {
+    return (meta.getLong(HEADER_BYTES + 8 * (testId >>> 6)) & (1L << testId)) == 0;
+  }
+
+  public boolean isCovered(int entityId, int testId) {
+    return (rowWord(entityId, testId >>> 6) & (1L << testId)) != 0;
+  }
+
+  /**
+   * Ids of the tests executing an entity, in increasing order
+   */
+  @Override
+  public IntStream getTestIds(int entityId) {
+    var builder = IntStream.builder();
+    for (int w = 0; w < words; w++) {
+      var bits = rowWord(entityId, w);
+      while (bits != 0) {
+        builder.add((w << 6) + Long.numberOfTrailingZeros(bits));
+        bits &= bits - 1;
+      }
+    }
+    return builder.build();
+  }
+
+  public int getFailedCount(int entityId) {
+    return meta.getInt(failedCountsOffset + 4 * entityId);
+  }
+
+  public int getPassedCount(int entityId) {
+    return meta.getInt(passedCountsOffset + 4 * entityId);
+  }
+
+  @Override
+  public long getTotalFailedTests(AnalysisLevel level) {
+    return meta.getLong(TOTALS_OFFSET + 8 * level.ordinal());
+  }
+
+  @Override
+  public long getTotalPassedTests(AnalysisLevel level) {
+    return meta.getLong(TOTALS_OFFSET + 8 * (LEVELS + level.ordinal()));
+  }
+
+  @Override
+  public int[] getEntityIdsAt(AnalysisLevel level) {
+    var levelCode = (byte) (level.ordinal() + 1);
+    return IntStream.range(0, entityCount)
+        .filter(e -> meta.get(levelsOffset + e) == levelCode)
+        .toArray();
+  }
+
+  @Override
+  public SpectrumColumns toSpectrumColumns(int[] entityIds) {
+    var size = entityIds.length;
+    var ef = new double[size];
+    var ep = new double[size];
+    var nf = new double[size];
+    var np = new double[size];
+    for (int i = 0; i < size; i++) {
+      var entity = entityIds[i];
+      var level = getLevel(entity);
+      ef[i] = getFailedCount(entity);
+      ep[i] = getPassedCount(entity);
+      if (level != null) {
+        nf[i] = getTotalFailedTests(level);
+        np[i] = getTotalPassedTests(level);
+      }
+    }
+    return new SpectrumColumns(ef, ep, nf, np);
+  }
+
+  public SpectrumColumns toSpectrumColumns() {
+    return toSpectrumColumns(IntStream.range(0, entityCount).toArray());
+  }
+
+  /**
+   * Release the file; mapped pages are unmapped once the store is no longer reachable
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private long rowWord(int entityId, int w) {
+    return rowSegments[entityId / rowsPerSegment]
+        .getLong(((entityId % rowsPerSegment) * words + w) * 8);
+  }
+
+  private String string(int index) {
+    var from = meta.getInt(stringOffsetsOffset + 4 * index);
+    var to = meta.getInt(stringOffsetsOffset + 4 * (index + 1));
+    var bytes = new byte[to - from];
+    meta.duplicate().position(stringBytesOffset + from).get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Byte offsets of the sections of a store with the given counts
+   */
+  private static final class Layout {
+
+    private final int fqnIds;
+    private final int lines;
+    private final int failedCounts;
+    private final int passedCounts;
+    private final int levels;
+    private final int stringOffsets;
+    private final int stringBytes;
+    private final long rows;
+
+    private Layout(int entityCount, int testCount, int words, int fqnCount,
+        long dictionaryBytes) {
+      fqnIds = HEADER_BYTES + 8 * words;
+      lines = fqnIds + 4 * entityCount;
+      failedCounts = lines + 4 * entityCount;
+      passedCounts = failedCounts + 4 * entityCount;
+      levels = passedCounts + 4 * entityCount;
+      stringOffsets = levels + entityCount;
+      stringBytes = stringOffsets + 4 * (FIRST_FQN + fqnCount + testCount + 1);
+      rows = (stringBytes + dictionaryBytes + 7) & ~7L;
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package statistics.entity;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the test view and entity view of a {@link ProgramSnapshot} or a {@link
+ * MappedCoverageStore}, as returned by {@link Program#toProfile()}, without building them in memory
+ * first.
+ *
+ * <p>The entities of a test are listed by line. The line of every entity is read from its name
+ * once, entities are sorted by line once, and the test rows are then laid out in that order in one
+ * counting pass over the coverage, so no test row is sorted on its own. The JSON form is written through a {@link JsonGenerator}. The
+ * binary form keeps the names once and the entity rows as varint gaps between test ids; {@link
+ * #binaryToJson(InputStream, OutputStream)} turns it back into the JSON form.
+ */
+public class ProfileWriter {
+
+  private static final int MAGIC = 0x44464c50;
+  private static final int VERSION = 1;
+
+  private final String[] entityNames;
+  private final String[] testNames;
+  /* entity => test ids, increasing */
+  private final int[] entityOffsets;
+  private final int[] entityTests;
+  /* entity => line the entities of a test are listed by */
+  private final int[] sortLines;
+  /* test => entity ids, by line then id */
+  private final int[] testOffsets;
+  private final int[] testEntities;
+
+  private ProfileWriter(String[] entityNames, String[] testNames, int[] entityOffsets,
+      int[] entityTests, int[] sortLines) {
+    this.entityNames = entityNames;
+    this.testNames = testNames;
+    this.entityOffsets = entityOffsets;
+    this.entityTests = entityTests;
+    this.sortLines = sortLines;
+
+    var testCount = testNames.length;
+    testOffsets = new int[testCount + 1];
+    for (int test : entityTests) {
+      testOffsets[test + 1]++;
+    }
+    for (int t = 0; t < testCount; t++) {
+      testOffsets[t + 1] += testOffsets[t];
+    }
+    testEntities = new int[entityTests.length];
+    var next = Arrays.copyOf(testOffsets, testCount);
+    for (int entity : lineOrder(sortLines)) {
+      for (int i = entityOffsets[entity]; i < entityOffsets[entity + 1]; i++) {
+        testEntities[next[entityTests[i]]++] = entity;
+      }
+    }
+  }
+
+  public static ProfileWriter of(ProgramSnapshot snapshot) {
+    return of(snapshot, snapshot::getEntityName, snapshot::getTestName);
+  }
+
+  /**
+   * The profile of a program kept in a coverage store, read from the store without building its
+   * entities
+   */
+  public static ProfileWriter of(MappedCoverageStore store) {
+    return of(store, store::getEntityName, store::getTestName);
+  }
+
+  private static ProfileWriter of(SpectrumSource source, IntFunction<String> entityName,
+      IntFunction<String> testName) {
+    var entityCount = source.getEntityCount();
+    var entityNames = new String[entityCount];
+    var sortLines = new int[entityCount];
+    var entityOffsets = new int[entityCount + 1];
+    for (int e = 0; e < entityCount; e++) {
+      entityNames[e] = entityName.apply(e);
+      sortLines[e] = sortLineOf(entityNames[e]);
+      entityOffsets[e + 1] = entityOffsets[e] + (int) source.getTestIds(e).count();
+    }
+    // rows are read twice rather than kept, so the coverage is held once next to the source
+    var entityTests = new int[entityOffsets[entityCount]];
+    for (int e = 0; e < entityCount; e++) {
+      var next = entityOffsets[e];
+      for (var tests = source.getTestIds(e).iterator(); tests.hasNext(); ) {
+        entityTests[next++] = tests.nextInt();
+      }
+    }
+    var testNames = IntStream.range(0, source.getTestCount())
+        .mapToObj(testName)
+        .toArray(String[]::new);
+    return new ProfileWriter(entityNames, testNames, entityOffsets, entityTests, sortLines);
+  }
+
+  /**
+   * The line in a name "level:qualified name:line"; names of legacy entities keep the line of
+   * their element name there
+   */
+  private static int sortLineOf(String entityName) {
+    var fields = entityName.split(":");
+    return fields.length > 2 ? Integer.parseInt(fields[2]) : 0;
+  }
+
+  /**
+   * Entity ids by line, ties in id order, sorted as packed (line, id) keys without boxing
+   */
+  private static int[] lineOrder(int[] sortLines) {
+    var keys = new long[sortLines.length];
+    for (int e = 0; e < keys.length; e++) {
+      keys[e] = (long) sortLines[e] << 32 | e;
+    }
+    Arrays.sort(keys);
+    var order = new int[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      order[i] = (int) keys[i];
+    }
+    return order;
+  }
+
+  public JsonObject toJson() {
+    var testView = Json.createArrayBuilder();
+    for (int t = 0; t < testNames.length; t++) {
+      var entities = Json.createArrayBuilder();
+      for (int i = testOffsets[t]; i < testOffsets[t + 1]; i++) {
+        entities.add(entityNames[testEntities[i]]);
+      }
+      testView.add(Json.createObjectBuilder()
+          .add("testCase", testNames[t])
+          .add("entities", entities));
+    }
+    var entityView = Json.createArrayBuilder();
+    for (int e = 0; e < entityNames.length; e++) {
+      entityView.add(Json.createObjectBuilder()
+          .add("entity", entityNames[e])
+          .add("tests", testsOf(e)));
+    }
+    return Json.createObjectBuilder().add("testView", testView)
+        .add("entityView", entityView)
+        .build();
+  }
+
+  private JsonArrayBuilder testsOf(int entity) {
+    var tests = Json.createArrayBuilder();
+    for (int i = entityOffsets[entity]; i < entityOffsets[entity + 1]; i++) {
+      tests.add(testNames[entityTests[i]]);
+    }
+    return tests;
+  }
+
+  /**
+   * Write the profile as a JSON document
+   */
+  public void writeJson(OutputStream out) {
+    var generator = Json.createGenerator(out);
+    generator.writeStartObject();
+    writeViews(generator);
+    generator.writeEnd();
+    generator.flush();
+  }
+
+  /**
+   * Write the profile as a member of the object the generator is in
+   */
+  public void writeJson(String name, JsonGenerator generator) {
+    generator.writeStartObject(name);
+    writeViews(generator);
+    generator.writeEnd();
+  }
+
+  private void writeViews(JsonGenerator generator) {
+    generator.writeStartArray("testView");
+    for (int t = 0; t < testNames.length; t++) {
+      generator.writeStartObject()
+          .write("testCase", testNames[t])
+          .writeStartArray("entities");
+      for (int i = testOffsets[t]; i < testOffsets[t + 1]; i++) {
+        generator.write(entityNames[testEntities[i]]);
+      }
+      generator.writeEnd().writeEnd();
+    }
+    generator.writeEnd();
+
+    generator.writeStartArray("entityView");
+    for (int e = 0; e < entityNames.length; e++) {
+      generator.writeStartObject()
+          .write("entity", entityNames[e])
+          .writeStartArray("tests");
+      for (int i = entityOffsets[e]; i < entityOffsets[e + 1]; i++) {
+        generator.write(testNames[entityTests[i]]);
+      }
+      generator.writeEnd().writeEnd();
+    }
+    generator.writeEnd();
+  }
+
+  /**
+   * Write the profile in the compact binary form
+   */
+  public void writeBinary(OutputStream out) throws IOException {
+    var data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(entityNames.length);
+    data.writeInt(testNames.length);
+    for (String name : testNames) {
+      data.writeUTF(name);
+    }
+    for (int e = 0; e < entityNames.length; e++) {
+      data.writeUTF(entityNames[e]);
+      writeVarInt(data, sortLines[e]);
+      writeVarInt(data, entityOffsets[e + 1] - entityOffsets[e]);
+      var previous = -1;
+      for (int i = entityOffsets[e]; i < entityOffsets[e + 1]; i++) {
+        writeVarInt(data, entityTests[i] - previous);
+        previous = entityTests[i];
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Read a profile in the binary form
+   */
+  public static ProfileWriter readBinary(InputStream in) throws IOException {
+    var data = new DataInputStream(new BufferedInputStream(in));
+    if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+      throw new IOException("Not a binary profile of version " + VERSION);
+    }
+    var entityCount = data.readInt();
+    var testNames = new String[data.readInt()];
+    for (int t = 0; t < testNames.length; t++) {
+      testNames[t] = data.readUTF();
+    }
+    var entityNames = new String[entityCount];
+    var sortLines = new int[entityCount];
+    var entityOffsets = new int[entityCount + 1];
+    var entityTests = new int[Math.max(16, testNames.length)];
+    for (int e = 0; e < entityCount; e++) {
+      entityNames[e] = data.readUTF();
+      sortLines[e] = readVarInt(data);
+      var count = readVarInt(data);
+      entityOffsets[e + 1] = entityOffsets[e] + count;
+      if (entityOffsets[e + 1] > entityTests.length) {
+        entityTests = Arrays.copyOf(entityTests,
+            Math.max(entityTests.length * 2, entityOffsets[e + 1]));
+      }
+      var test = -1;
+      for (int i = entityOffsets[e]; i < entityOffsets[e + 1]; i++) {
+        test += readVarInt(data);
+        entityTests[i] = test;
+      }
+    }
+    return new ProfileWriter(entityNames, testNames, entityOffsets,
+        Arrays.copyOf(entityTests, entityOffsets[entityCount]), sortLines);
+  }
+
+  /**
+   * Convert a binary profile to the JSON form
+   */
+  public static void binaryToJson(InputStream in, OutputStream out) throws IOException {
+    readBinary(in).writeJson(out);
+  }
+
+  private static void writeVarInt(DataOutputStream data, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      data.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    data.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream data) throws IOException {
+    var value = 0;
+    for (int shift = 0; ; shift += 7) {
+      var b = data.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+}
@@ -1,17 +1,27 @@
 package statistics.entity;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import statistics.algorithm.BatchScorer;
+import statistics.algorithm.ParallelScorer;
 import statistics.algorithm.RankingAlgorithm;
 import statistics.algorithm.SpectrumBasedIndexing;
+import statistics.algorithm.SpectrumClasses;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -20,6 +30,14 @@ import java.util.stream.Collectors;
 @Setter
 public class Program implements SpectrumBasedIndexing {
 
+  private static final int FAILED = 0;
+  private static final int PASSED = 1;
+  /* entity types whose instances all sit at one level */
+  private static final Map<Class<? extends AbstractEntity>, AnalysisLevel> ENTITY_LEVELS = Map.of(
+      StatementEntity.class, AnalysisLevel.STATEMENT,
+      MethodEntity.class, AnalysisLevel.METHOD,
+      BranchEntity.class, AnalysisLevel.BRANCH);
+
   private Set<AbstractEntity> entitySet;
   private Set<TestCase>
       testSet;
@@ -28,11 +46,50 @@ public class Program implements SpectrumBasedIndexing {
   private LocalDateTime localDateTime;
   private String codeBase = "";
 
+  /* level => {failed tests, passed tests} covering at least one entity of that level */
+  @Getter(AccessLevel.NONE)
+  private final Map<AnalysisLevel, long[]> testTotals = new EnumMap<>(AnalysisLevel.class);
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final TestRegistry testRegistry = new TestRegistry();
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final EntitySymbolTable symbolTable = new EntitySymbolTable();
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private CoverageMatrix coverageMatrix;
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private SpectrumClasses spectrumClasses;
+
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private volatile ProgramSnapshot snapshot;
+
+  /* when set, coverage is read from this store file or these module shards instead of from the
+     entity and test sets */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private SpectrumSource externalSource;
+
+  /* algorithm => scores of the last parallel indexing, indexed by coverage matrix entity id */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private final Map<RankingAlgorithm, double[]> indexedScores = new EnumMap<>(
+      RankingAlgorithm.class);
+
   public Program(Set<AbstractEntity> entities, Set<TestCase> tests) {
     entitySet = entities;
     testSet = tests;
-    entitySet.forEach(e -> e.setParentProgram(this));
+    canonicalizeCoverage();
     testSet.forEach(t -> t.setParentProgram(this));
+    testSet.forEach(testRegistry::register);
+    entitySet.forEach(e -> e.setParentProgram(this));
+    countTests();
     localDateTime = LocalDateTime.now();
   }
 
@@ -42,18 +99,41 @@ public class Program implements SpectrumBasedIndexing {
         .map(TestCase::getEntities)
         .flatMap(Collection::stream)
         .collect(Collectors.toSet());
+    canonicalizeCoverage();
+    testSet.forEach(t -> t.setParentProgram(this));
+    testSet.forEach(testRegistry::register);
+    entitySet.forEach(e -> e.setParentProgram(this));
+    countTests();
+  }
+
+  /**
+   * Point the covered entities of the tests at the entity objects of this program, which the
+   * counts of verdict changes are made on; parsers may leave equal copies there
+   */
+  private void canonicalizeCoverage() {
+    Map<AbstractEntity, AbstractEntity> entities = new HashMap<>(entitySet.size() * 2);
+    entitySet.forEach(entity -> entities.put(entity, entity));
+    testSet.forEach(test -> {
+      var covered = test.getEntities();
+      if (covered != null && covered.stream()
+          .anyMatch(entity -> entities.getOrDefault(entity, entity) != entity)) {
+        test.setEntities(covered.stream()
+            .map(entity -> entities.getOrDefault(entity, entity))
+            .collect(Collectors.toCollection(HashSet::new)));
+      }
+    });
   }
 
   public static Program createProgramFromEntitySet(Set<AbstractEntity> entitySet) {
     Set<TestCase> tests = entitySet.stream()
-        .map(e -> ((ExecutionEntity) e).getExecutionCount().keySet())
+        .map(AbstractEntity::getAllTest)
         .flatMap(Collection::stream)
         .collect(Collectors.toSet());
     return new Program(entitySet, tests);
   }
 
   public Set<TestCase> getTestCases() {
-    return testSet;
+    return getTestSet();
   }
 
   public Program() {
@@ -61,57 +141,544 @@ public class Program implements SpectrumBasedIndexing {
     testSet = new HashSet<>();
   }
 
-  /* to be corrected */
+  /**
+   * Merge the tests and entities of another program into this one in one pass over each, matching
+   * tests and entities by identity through hash indexes. A test present in both keeps the object of
+   * this program and fails if it failed in either; an entity present in both gets the execution
+   * records of both, merged by test, so that a test run in both programs is recorded once with the
+   * count of this program. The other program is consumed: its tests and entities move to this one.
+   *
+   * @return the merged program, which is the other one when this one is empty
+   */
   public Program addProgram(Program anotherProgram) {
-      if (entitySet.isEmpty() && testSet.isEmpty()) {
-          return anotherProgram;
+    if (entitySet.isEmpty() && testSet.isEmpty()) {
+      return anotherProgram;
+    }
+    onCoverageChanged();
+
+    Map<TestCase, TestCase> tests = new HashMap<>(testSet.size() + anotherProgram.testSet.size());
+    testSet.forEach(test -> tests.put(test, test));
+    Map<AbstractEntity, AbstractEntity> entities = new HashMap<>(
+        entitySet.size() + anotherProgram.entitySet.size());
+    entitySet.forEach(entity -> entities.put(entity, entity));
+
+    List<TestCase> addedTests = new ArrayList<>();
+    anotherProgram.testSet.forEach(other -> {
+      var test = tests.putIfAbsent(other, other);
+      if (test == null) {
+        // detached until its covered entities are canonical, then counted once
+        other.setParentProgram(null);
+        addedTests.add(other);
+      } else if (test.isPassed() && !other.isPassed()) {
+        test.setStatus(other.getStatus());
+        test.setPassed(false);
+      }
+    });
+
+    anotherProgram.entitySet.forEach(other -> {
+      var entity = entities.putIfAbsent(other, other);
+      if (entity == null) {
+        // its tests get the ids of the equal tests of this program
+        other.setParentProgram(this);
+        entitySet.add(other);
+      } else {
+        ((ExecutionEntity) other).getExecutionCount().forEach((test, count) -> {
+          var canonical = tests.getOrDefault(test, test);
+          if (!entity.isExecutedByTest(canonical)) {
+            entity.addTest(canonical, count);
+          }
+        });
+      }
+    });
+
+    // covered entities of the other tests, as canonical objects
+    anotherProgram.testSet.forEach(other -> {
+      var test = tests.get(other);
+      var covered = other.getEntities().stream()
+          .map(entity -> entities.getOrDefault(entity, entity))
+          .collect(Collectors.toSet());
+      if (test == other) {
+        test.setEntities(covered);
+      } else {
+        test.addCoveredEntities(covered);
+      }
+    });
+    testSet.addAll(addedTests);
+    addedTests.forEach(test -> {
+      test.setParentProgram(this);
+      testRegistry.register(test);
+      countTest(test, 1);
+    });
+    return this;
+  }
+
+  /**
+   * Merge programs as a parallel tree reduction of {@link #addProgram(Program)}; the programs are
+   * consumed, and must not share test or entity objects
+   *
+   * @return the merged program, or an empty program if there is none
+   */
+  public static Program mergeAll(Collection<Program> programs) {
+    return programs.parallelStream()
+        .reduce(Program::addProgram)
+        .orElseGet(Program::new);
+  }
+
+  /**
+   * Collapse tests with the same covered entities and verdict into one test, the first met, whose
+   * multiplicity becomes the sum of theirs. The others leave the program and the execution records
+   * of their entities; every spectrum count weighs a test by its multiplicity, so rankings do not
+   * change. Execution counts of the collapsed tests are dropped with them.
+   *
+   * @return this program
+   */
+  public Program deduplicateTests() {
+    Map<List<Object>, TestCase> representatives = new HashMap<>(testSet.size() * 2);
+    Map<TestCase, Integer> multiplicities = new HashMap<>();
+    Set<TestCase> duplicates = new HashSet<>();
+    for (TestCase test : testSet) {
+      var coverage = test.getEntities() == null ? Set.of() : test.getEntities();
+      var representative = representatives.putIfAbsent(List.of(test.isPassed(), coverage), test);
+      if (representative != null) {
+        multiplicities.put(representative, multiplicities.getOrDefault(representative,
+            representative.getMultiplicity()) + test.getMultiplicity());
+        duplicates.add(test);
       }
+    }
+    if (duplicates.isEmpty()) {
+      return this;
+    }
 
-    this.testSet.stream().forEach(test ->
-        anotherProgram.getTestCases()
-            .stream()
-            .filter(t -> t.equals(test))
-            .findFirst()
-            .ifPresent(foundTest -> test.getEntities().addAll(foundTest.getEntities()))
-    );
-    this.getEntitySet().addAll(anotherProgram.getEntitySet());
+    duplicates.forEach(test -> countTest(test, -1));
+    removeTests(duplicates);
+    multiplicities.forEach(TestCase::setMultiplicity);
     return this;
   }
 
+  /**
+   * Replace the coverage of some entities in place, as when the report of their class is rewritten
+   * by a rerun of some tests. The stale entities leave the program with their execution records,
+   * and the entities covered by the fresh tests join it. A fresh test equal to a test of this
+   * program stands for it and passes its verdict on; any other joins the program. Tests that
+   * covered only stale entities and are not among the fresh ones leave the program.
+   *
+   * <p>The work is one pass over the test set plus the coverage replaced, so a rerun touching a few
+   * classes is patched without rebuilding the program.
+   *
+   * @param fresh tests covering only entities that are not in this program once the stale ones
+   * left
+   * @return the entities whose spectrum changed: those that left, the program's instances of those
+   * that joined, and those covered by a test whose verdict changed
+   */
+  public Set<AbstractEntity> replaceCoverage(Collection<? extends AbstractEntity> stale,
+      Collection<TestCase> fresh) {
+    onCoverageChanged();
+    Map<AbstractEntity, AbstractEntity> staleEntities = stale.stream()
+        .filter(entitySet::contains)
+        .collect(Collectors.toMap(entity -> entity, entity -> entity, (e1, e2) -> e1));
+    Set<AbstractEntity> changed = new HashSet<>(staleEntities.keySet());
+    Set<TestCase> uncovered = new HashSet<>();
+    staleEntities.keySet().forEach(entity -> {
+      uncovered.addAll(entity.getAllTest());
+      entitySet.remove(entity);
+      entity.setParentProgram(null);
+    });
+    uncovered.forEach(test -> test.setEntities(test.getEntities().stream()
+        .filter(entity -> !staleEntities.containsKey(entity))
+        .collect(Collectors.toCollection(HashSet::new))));
+
+    Map<TestCase, TestCase> tests = new HashMap<>(testSet.size() * 2);
+    testSet.forEach(test -> tests.put(test, test));
+    Map<AbstractEntity, AbstractEntity> entities = new HashMap<>();
+    Set<TestCase> verdictsChanged = new HashSet<>();
+    for (TestCase other : fresh) {
+      Set<AbstractEntity> covered = other.getEntities() == null ? Set.of() : other.getEntities();
+      var test = tests.putIfAbsent(other, other);
+      if (test == null) {
+        // joins uncovered, then counted level by level as its entities are added
+        test = other;
+        test.setParentProgram(null);
+        test.setEntities(new HashSet<>());
+        test.setParentProgram(this);
+        testSet.add(test);
+        testRegistry.register(test);
+      } else if (test.isPassed() != other.isPassed()) {
+        changed.addAll(test.getEntities());
+        verdictsChanged.add(test);
+        test.setStatus(other.getStatus());
+        test.setPassed(other.isPassed());
+      }
+      uncovered.remove(test);
+      for (AbstractEntity entity : covered) {
+        var canonical = entities.computeIfAbsent(entity, joining -> {
+          if (entitySet.contains(joining)) {
+            throw new IllegalArgumentException(
+                joining.getQualifiedName() + " is covered by a fresh test but is not stale");
+          }
+          entitySet.add(joining);
+          joining.setParentProgram(this);
+          // equal to the stale entity it replaces, which must not stand in for it
+          changed.remove(joining);
+          changed.add(joining);
+          return joining;
+        });
+        canonical.addTest(test, 1);
+        test.addCoveredEntity(canonical);
+      }
+    }
+
+    // an entity joining again with the same tests and verdicts keeps its spectrum
+    entities.values().forEach(joined -> {
+      var left = staleEntities.get(joined);
+      if (left != null && left.getAllTest().equals(joined.getAllTest())
+          && Collections.disjoint(joined.getAllTest(), verdictsChanged)) {
+        changed.remove(joined);
+      }
+    });
+
+    removeTests(uncovered.stream()
+        .filter(test -> test.getEntities().isEmpty())
+        .collect(Collectors.toList()));
+    return changed;
+  }
+
+  /**
+   * Take tests out of the program and of its test registry, whose ids stay dense
+   */
+  private void removeTests(Collection<TestCase> removed) {
+    removed.forEach(test -> {
+      test.setParentProgram(null);
+      testSet.remove(test);
+    });
+    var remap = testRegistry.remove(removed);
+    if (remap != null) {
+      entitySet.forEach(entity -> ((ExecutionEntity) entity).remapTests(remap));
+    }
+  }
 
   public static Program create(Set<TestCase> tests) {
     return new Program(tests);
   }
 
+  /**
+   * A program whose coverage stays in a {@link MappedCoverageStore}. It has no entity and test sets:
+   * their accessors, the coverage matrix, the snapshot and the indexing methods throw. It is ranked
+   * through {@link #getSpectrumSource()}, which only builds the reported entities on the heap.
+   */
+  public static Program open(Path coverageStorePath) throws IOException {
+    var store = MappedCoverageStore.open(coverageStorePath);
+    var program = new Program();
+    program.externalSource = store;
+    program.name = store.getProgramName();
+    program.version = store.getProgramVersion();
+    program.localDateTime = LocalDateTime.now();
+    return program;
+  }
+
+  /**
+   * A program ranked over the coverage of several module shards, see {@link ShardedProgram}. Like
+   * an opened program, it has no entity and test sets of its own.
+   */
+  public static Program sharded(ShardedProgram shards) {
+    var program = new Program();
+    program.externalSource = shards;
+    program.name = shards.getShards().stream()
+        .map(Program::getName)
+        .collect(Collectors.joining(","));
+    program.version = program.name;
+    program.codeBase = program.name;
+    program.localDateTime = LocalDateTime.now();
+    return program;
+  }
+
+  /**
+   * @return the store an opened program reads from, or null
+   */
+  public MappedCoverageStore getCoverageStore() {
+    return externalSource instanceof MappedCoverageStore ? (MappedCoverageStore) externalSource
+        : null;
+  }
+
+  /**
+   * @return the shards a sharded program ranks over, or null
+   */
+  public ShardedProgram getShardedProgram() {
+    return externalSource instanceof ShardedProgram ? (ShardedProgram) externalSource : null;
+  }
+
+  /**
+   * Persist the current coverage to a store file that {@link #open(Path)} can map later
+   */
+  public MappedCoverageStore writeCoverageStore(Path path) throws IOException {
+    return MappedCoverageStore.write(this, path);
+  }
+
   public Set<AbstractEntity> getEntitySet() {
+    requireHeapCoverage();
     return entitySet;
   }
 
+  public Set<TestCase> getTestSet() {
+    requireHeapCoverage();
+    return testSet;
+  }
+
+  /**
+   * Fail on a program whose coverage is read from a store or shards, which would otherwise answer
+   * with empty sets and zero counts
+   */
+  private void requireHeapCoverage() {
+    if (externalSource != null) {
+      throw new IllegalStateException("The coverage of " + name
+          + " is not on the heap; read it through getSpectrumSource()");
+    }
+  }
+
+  public void setEntitySet(Set<AbstractEntity> entities) {
+    entitySet = entities;
+    onCoverageChanged();
+  }
+
+  /**
+   * Bitset view of the coverage of this program. It is built on first use and dropped whenever
+   * tests, entities or test statuses change, so it is rebuilt at most once per indexing round.
+   */
+  public CoverageMatrix getCoverageMatrix() {
+    requireHeapCoverage();
+    if (coverageMatrix == null) {
+      coverageMatrix = CoverageMatrix.of(this);
+    }
+    return coverageMatrix;
+  }
+
+  /**
+   * Entities of {@link #getCoverageMatrix()} grouped by identical spectrum, cached with the matrix
+   */
+  public SpectrumClasses getSpectrumClasses() {
+    if (spectrumClasses == null) {
+      spectrumClasses = SpectrumClasses.of(getCoverageMatrix().toSpectrumColumns());
+    }
+    return spectrumClasses;
+  }
+
+  /**
+   * Ids of the entity identities this program held, see {@link ExecutionEntity#getId()}
+   */
+  public EntitySymbolTable getSymbolTable() {
+    return symbolTable;
+  }
+
+  /**
+   * Dense ids, statuses and multiplicities of the tests of this program, kept up to date as tests
+   * join, leave or change
+   */
+  public TestRegistry getTestRegistry() {
+    return testRegistry;
+  }
+
+  /**
+   * Immutable snapshot of the current coverage, shared by all readers until the coverage changes
+   */
+  public ProgramSnapshot freeze() {
+    requireHeapCoverage();
+    var current = snapshot;
+    if (current == null) {
+      synchronized (this) {
+        current = snapshot;
+        if (current == null) {
+          current = ProgramSnapshot.of(this);
+          snapshot = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Where spectra are read from: the coverage store of an opened program or the shards of a
+   * sharded one, otherwise the snapshot
+   */
+  public SpectrumSource getSpectrumSource() {
+    return externalSource != null ? externalSource : freeze();
+  }
+
+  /**
+   * Refresh the registry entry of a test whose verdict or multiplicity changed, and move the counts
+   * of the entities of this program it covers
+   */
+  void onTestStatusChanged(TestCase test, boolean wasPassed, int oldMultiplicity) {
+    testRegistry.update(test);
+    var id = testRegistry.getId(test);
+    if (id < 0 || test.getEntities() == null) {
+      return;
+    }
+    test.getEntities().forEach(entity -> {
+      if (entity.getParentProgram() == this) {
+        ((ExecutionEntity) entity).onTestChanged(id, wasPassed, oldMultiplicity);
+      }
+    });
+  }
+
+  void onCoverageChanged() {
+    coverageMatrix = null;
+    spectrumClasses = null;
+    snapshot = null;
+    indexedScores.clear();
+  }
+
 
+  /**
+   * Same as {@link #getTotalFailedTests(AnalysisLevel)} for the entity types of one level; other
+   * types, which have no level, are counted over the test set
+   */
   public long getTotalFailedTests(Class<? extends AbstractEntity> entityType) {
-    return testSet.stream().filter(t -> !t.isPassed() && t.isCoveringEntityType(entityType))
-        .count();
+    var level = ENTITY_LEVELS.get(entityType);
+    if (level != null) {
+      return getTotalFailedTests(level);
+    }
+    return getTestSet().stream().filter(t -> !t.isPassed() && t.isCoveringEntityType(entityType))
+        .mapToLong(TestCase::getMultiplicity)
+        .sum();
   }
 
+  /**
+   * Same as {@link #getTotalPassedTests(AnalysisLevel)} for the entity types of one level; other
+   * types, which have no level, are counted over the test set
+   */
   public long getTotalPassedTests(Class<? extends AbstractEntity> entityType) {
-    return testSet.stream().filter(t -> t.isPassed() && t.isCoveringEntityType(entityType)).count();
+    var level = ENTITY_LEVELS.get(entityType);
+    if (level != null) {
+      return getTotalPassedTests(level);
+    }
+    return getTestSet().stream().filter(t -> t.isPassed() && t.isCoveringEntityType(entityType))
+        .mapToLong(TestCase::getMultiplicity)
+        .sum();
+  }
+
+  /**
+   * Number of failed tests, by multiplicity, covering at least one entity at the given level, kept up
+   * to date as tests and covered entities are added
+   */
+  public long getTotalFailedTests(AnalysisLevel level) {
+    if (externalSource != null) {
+      return externalSource.getTotalFailedTests(level);
+    }
+    return testTotals.getOrDefault(level, new long[2])[FAILED];
+  }
+
+  /**
+   * Number of passed tests, by multiplicity, covering at least one entity at the given level, kept up
+   * to date as tests and covered entities are added
+   */
+  public long getTotalPassedTests(AnalysisLevel level) {
+    if (externalSource != null) {
+      return externalSource.getTotalPassedTests(level);
+    }
+    return testTotals.getOrDefault(level, new long[2])[PASSED];
+  }
+
+  public void setTestSet(Set<TestCase> tests) {
+    testRegistry.remove(testSet);
+    testSet = tests;
+    testSet.forEach(testRegistry::register);
+    countTests();
+    onCoverageChanged();
+  }
+
+  private void countTests() {
+    testTotals.clear();
+    testSet.forEach(test -> countTest(test, 1));
+  }
+
+  void countTest(TestCase test, int delta) {
+    onCoverageChanged();
+    test.getCoveredLevels().forEach(
+        level -> totalsOf(level)[statusOf(test)] += (long) delta * test.getMultiplicity());
+  }
+
+  void onLevelCovered(TestCase test, AnalysisLevel level) {
+    onCoverageChanged();
+    totalsOf(level)[statusOf(test)] += test.getMultiplicity();
+  }
+
+  private long[] totalsOf(AnalysisLevel level) {
+    return testTotals.computeIfAbsent(level, l -> new long[2]);
+  }
+
+  private static int statusOf(TestCase test) {
+    return test.isPassed() ? PASSED : FAILED;
   }
 
   /**
-   * Index all entity will all available algorithms
+   * Index all entity will all available algorithms; formulas are evaluated once per spectrum class
    */
   public Program indexAll() {
-    entitySet.forEach(AbstractEntity::rankAll);
+    var classes = getSpectrumClasses();
+    var classScores = BatchScorer.scoreAll(classes.getRepresentatives());
+    for (RankingAlgorithm algorithm : RankingAlgorithm.values()) {
+      writeScores(algorithm, classes, classScores[algorithm.ordinal()]);
+    }
     return this;
   }
 
   @Override
   public Program indexByAlgorithm(RankingAlgorithm algorithm) {
-    entitySet.forEach(e -> e.rankByAlgorithm(algorithm));
+    var classes = getSpectrumClasses();
+    writeScores(algorithm, classes, classes.score(algorithm));
+    localDateTime = LocalDateTime.now();
+    return this;
+  }
+
+  /**
+   * Score all entities by an algorithm without recording the scores on the entities
+   *
+   * @return scores indexed by the entity ids of {@link #getCoverageMatrix()}
+   */
+  public double[] scoreByAlgorithm(RankingAlgorithm algorithm) {
+    var classes = getSpectrumClasses();
+    return classes.expand(classes.score(algorithm));
+  }
+
+  /**
+   * Index all entities with all available algorithms on the workers of a scorer. Scores go into one
+   * preallocated column per algorithm, read back through {@link #getIndexedScore(AbstractEntity,
+   * RankingAlgorithm)}, instead of into the rank maps of the entities.
+   */
+  public Program indexAll(ParallelScorer scorer) {
+    var columns = getCoverageMatrix().toSpectrumColumns();
+    for (RankingAlgorithm algorithm : RankingAlgorithm.values()) {
+      indexedScores.put(algorithm, scorer.score(columns, algorithm));
+    }
+    return this;
+  }
+
+  public Program indexByAlgorithm(RankingAlgorithm algorithm, ParallelScorer scorer) {
+    indexedScores.put(algorithm, scorer.score(getCoverageMatrix().toSpectrumColumns(), algorithm));
     localDateTime = LocalDateTime.now();
     return this;
   }
 
+  /**
+   * @return the score of the entity from the last parallel indexing by the algorithm, or null
+   */
+  public Double getIndexedScore(AbstractEntity entity, RankingAlgorithm algorithm) {
+    var scores = indexedScores.get(algorithm);
+    if (scores == null) {
+      return null;
+    }
+    var entityId = getCoverageMatrix().getEntityId(entity);
+    return entityId < 0 ? null : scores[entityId];
+  }
+
+  private void writeScores(RankingAlgorithm algorithm, SpectrumClasses classes,
+      double[] classScores) {
+    indexedScores.remove(algorithm);
+    var entities = getCoverageMatrix().getEntities();
+    for (int i = 0; i < entities.size(); i++) {
+      entities.get(i).setRankingScoreByAlgorithm(algorithm, classScores[classes.getClassOf(i)]);
+    }
+  }
+
   public String getName() {
     return name;
   }
@@ -127,7 +694,7 @@ public class Program implements SpectrumBasedIndexing {
       System.out.println(entityIndex.getAndIncrement() + ". => " + e + ":");
       AtomicInteger testIndex = new AtomicInteger();
       testIndex.set(1);
-      ((ExecutionEntity) e).getExecutionCount().keySet()
+      e.getAllTest()
           .forEach(t -> System.out.println("\t" + testIndex.getAndIncrement() + ". => " + t));
     });
   }
@@ -156,28 +723,28 @@ public class Program implements SpectrumBasedIndexing {
   }
 
   public JsonObject toProfile() {
+    return getProfileWriter().toJson();
+  }
+
+  /**
+   * Writer of the profile of this program, read from its coverage store if it was opened from one
+   */
+  public ProfileWriter getProfileWriter() {
+    var store = getCoverageStore();
+    return store != null ? ProfileWriter.of(store) : ProfileWriter.of(freeze());
+  }
 
-    var testView = testSet.stream()
-        .map(testCase -> Json.createObjectBuilder()
-            .add("testCase", testCase.toString())
-            .add("entities", Json.createArrayBuilder(testCase.getEntities()
-                .stream()
-                .map(Object::toString)
-                .sorted(Comparator.comparing(o -> Integer.valueOf(o.split(":")[2])))
-                .collect(Collectors.toList()))))
-        .collect(Json::createArrayBuilder, JsonArrayBuilder::add, JsonArrayBuilder::addAll);
-
-    var entityView = entitySet.stream()
-        .map(e -> Json.createObjectBuilder()
-            .add("entity", e.toString())
-            .add("tests", Json.createArrayBuilder(
-                e.getAllTest().stream().map(Object::toString).collect(Collectors.toList()))))
-        .collect(Json::createArrayBuilder, JsonArrayBuilder::add, JsonArrayBuilder::addAll);
-
-    var result = Json.createObjectBuilder().add("testView", testView)
-        .add("entityView", entityView)
-        .build();
-
-    return result;
+  /**
+   * Stream {@link #toProfile()} as JSON without building it in memory
+   */
+  public void writeProfile(OutputStream out) {
+    getProfileWriter().writeJson(out);
+  }
+
+  /**
+   * Write the profile in the compact binary form of {@link ProfileWriter}
+   */
+  public void writeBinaryProfile(OutputStream out) throws IOException {
+    getProfileWriter().writeBinary(out);
   }
 }
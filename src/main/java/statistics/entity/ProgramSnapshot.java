@@ -0,0 +1,240 @@
+package statistics.entity;
+
+import statistics.algorithm.SpectrumColumns;
+
+import javax.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable compressed sparse row form of a {@link Program}, made by {@link Program#freeze()}.
+ * Entity e is executed by the tests entityTests[entityOffsets[e] .. entityOffsets[e + 1]), and the
+ * reverse rows give the entities covered by each test. The coverage arrays are final and never
+ * handed out, so one snapshot can serve any number of concurrent ranking queries without locking.
+ *
+ * <p>{@link #getEntity(int)} returns the program's own entity objects, which stay mutable: ranking
+ * results may be recorded on them, as with {@link AbstractEntity#setRankingScoreByAlgorithm}.
+ * Spectra are read from the snapshot arrays only, so such writes never change a ranking made from
+ * the snapshot.
+ *
+ * <p>Entity and test ids are those of the {@link CoverageMatrix} the snapshot was made from.
+ */
+public final class ProgramSnapshot implements SpectrumSource {
+
+  private final List<AbstractEntity> entities;
+  private final String[] entityNames;
+  private final AnalysisLevel[] levels;
+  private final int[] entityOffsets;
+  private final int[] entityTests;
+  private final int[] failedCounts;
+  private final int[] passedCounts;
+
+  private final List<TestCase> tests;
+  private final String[] testNames;
+  private final boolean[] passed;
+  private final int[] multiplicities;
+  private final int[] testOffsets;
+  private final int[] testEntities;
+
+  /* by level ordinal: failed and passed tests covering at least one entity of the level */
+  private final long[] levelFailedTests;
+  private final long[] levelPassedTests;
+
+  private ProgramSnapshot(CoverageMatrix coverage) {
+    var entityCount = coverage.getEntityCount();
+    var testCount = coverage.getTestCount();
+    entities = Collections.unmodifiableList(new ArrayList<>(coverage.getEntities()));
+    entityNames = new String[entityCount];
+    levels = new AnalysisLevel[entityCount];
+    entityOffsets = new int[entityCount + 1];
+    failedCounts = new int[entityCount];
+    passedCounts = new int[entityCount];
+    for (int e = 0; e < entityCount; e++) {
+      entityNames[e] = entities.get(e).toString();
+      levels[e] = coverage.getLevel(e);
+      failedCounts[e] = coverage.getFailedCount(e);
+      passedCounts[e] = coverage.getPassedCount(e);
+      entityOffsets[e + 1] = entityOffsets[e] + coverage.getRow(e).cardinality();
+    }
+    entityTests = new int[entityOffsets[entityCount]];
+    var filled = new int[1];
+    for (int e = 0; e < entityCount; e++) {
+      coverage.getRow(e).forEach(test -> entityTests[filled[0]++] = test);
+    }
+
+    var testList = new ArrayList<TestCase>(testCount);
+    testNames = new String[testCount];
+    passed = new boolean[testCount];
+    multiplicities = new int[testCount];
+    for (int t = 0; t < testCount; t++) {
+      testList.add(coverage.getTest(t));
+      testNames[t] = coverage.getTest(t).toString();
+      passed[t] = coverage.isPassed(t);
+      multiplicities[t] = coverage.getWeight(t);
+    }
+    tests = Collections.unmodifiableList(testList);
+
+    // reverse rows: counting sort of the (entity, test) pairs by test
+    testOffsets = new int[testCount + 1];
+    for (int test : entityTests) {
+      testOffsets[test + 1]++;
+    }
+    for (int t = 0; t < testCount; t++) {
+      testOffsets[t + 1] += testOffsets[t];
+    }
+    testEntities = new int[entityTests.length];
+    var next = Arrays.copyOf(testOffsets, testCount);
+    for (int e = 0; e < entityCount; e++) {
+      for (int i = entityOffsets[e]; i < entityOffsets[e + 1]; i++) {
+        testEntities[next[entityTests[i]]++] = e;
+      }
+    }
+
+    var levelCount = AnalysisLevel.values().length;
+    levelFailedTests = new long[levelCount];
+    levelPassedTests = new long[levelCount];
+    var covered = new boolean[levelCount];
+    for (int t = 0; t < testCount; t++) {
+      Arrays.fill(covered, false);
+      for (int i = testOffsets[t]; i < testOffsets[t + 1]; i++) {
+        var level = levels[testEntities[i]];
+        if (level != null) {
+          covered[level.ordinal()] = true;
+        }
+      }
+      for (int l = 0; l < levelCount; l++) {
+        if (covered[l] && passed[t]) {
+          levelPassedTests[l] += multiplicities[t];
+        } else if (covered[l]) {
+          levelFailedTests[l] += multiplicities[t];
+        }
+      }
+    }
+  }
+
+  static ProgramSnapshot of(Program program) {
+    return new ProgramSnapshot(program.getCoverageMatrix());
+  }
+
+  @Override
+  public int getEntityCount() {
+    return levels.length;
+  }
+
+  @Override
+  public int getTestCount() {
+    return passed.length;
+  }
+
+  @Override
+  public AbstractEntity getEntity(int entityId) {
+    return entities.get(entityId);
+  }
+
+  public String getEntityName(int entityId) {
+    return entityNames[entityId];
+  }
+
+  @Override
+  public AnalysisLevel getLevel(int entityId) {
+    return levels[entityId];
+  }
+
+  public TestCase getTest(int testId) {
+    return tests.get(testId);
+  }
+
+  public String getTestName(int testId) {
+    return testNames[testId];
+  }
+
+  public boolean isPassed(int testId) {
+    return passed[testId];
+  }
+
+  /**
+   * Number of coverage-identical tests the test stands for, see {@link TestCase#getMultiplicity()}
+   */
+  public int getMultiplicity(int testId) {
+    return multiplicities[testId];
+  }
+
+  /**
+   * Ids of the tests executing an entity, in increasing order
+   */
+  @Override
+  public IntStream getTestIds(int entityId) {
+    return Arrays.stream(entityTests, entityOffsets[entityId], entityOffsets[entityId + 1]);
+  }
+
+  /**
+   * Ids of the entities covered by a test, in increasing order
+   */
+  public IntStream getEntityIds(int testId) {
+    return Arrays.stream(testEntities, testOffsets[testId], testOffsets[testId + 1]);
+  }
+
+  public int getFailedCount(int entityId) {
+    return failedCounts[entityId];
+  }
+
+  public int getPassedCount(int entityId) {
+    return passedCounts[entityId];
+  }
+
+  @Override
+  public long getTotalFailedTests(AnalysisLevel level) {
+    return levelFailedTests[level.ordinal()];
+  }
+
+  @Override
+  public long getTotalPassedTests(AnalysisLevel level) {
+    return levelPassedTests[level.ordinal()];
+  }
+
+  /**
+   * Ids of the entities at a level, in increasing order
+   */
+  @Override
+  public int[] getEntityIdsAt(AnalysisLevel level) {
+    return IntStream.range(0, levels.length)
+        .filter(e -> levels[e] == level)
+        .toArray();
+  }
+
+  /**
+   * Spectra of the given entities, in the given order; every call builds new columns
+   */
+  @Override
+  public SpectrumColumns toSpectrumColumns(int[] entityIds) {
+    var size = entityIds.length;
+    var ef = new double[size];
+    var ep = new double[size];
+    var nf = new double[size];
+    var np = new double[size];
+    for (int i = 0; i < size; i++) {
+      var entity = entityIds[i];
+      ef[i] = getFailedCount(entity);
+      ep[i] = getPassedCount(entity);
+      if (levels[entity] != null) {
+        nf[i] = levelFailedTests[levels[entity].ordinal()];
+        np[i] = levelPassedTests[levels[entity].ordinal()];
+      }
+    }
+    return new SpectrumColumns(ef, ep, nf, np);
+  }
+
+  public SpectrumColumns toSpectrumColumns() {
+    return toSpectrumColumns(IntStream.range(0, levels.length).toArray());
+  }
+
+  /**
+   * Test view and entity view of the coverage, as written by {@link Program#toProfile()}
+   */
+  public JsonObject toProfile() {
+    return ProfileWriter.of(this).toJson();
+  }
+}
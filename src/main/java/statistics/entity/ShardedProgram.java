@@ -0,0 +1,297 @@
+package statistics.entity;
+
+import statistics.algorithm.SpectrumColumns;
+import statistics.algorithm.SpectrumFormula;
+import statistics.algorithm.TopK;
+import statistics.profiling.ProfilingParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Coverage of several modules, one {@link Program} per module, ranked as one program without
+ * merging their object graphs. Every shard keeps its own snapshot and local ids; the entities of
+ * shard s get the global ids [offset(s), offset(s + 1)).
+ *
+ * <p>A test run by several modules is one test globally: it fails if it failed in any module, and
+ * nf/np count it once per level. The ef/ep of an entity are the counts of its own shard, recounted
+ * against the global verdicts only in shards that disagree with them. An entity reported by
+ * several modules is ranked once per module. A test weighs its largest multiplicity in any shard.
+ */
+public final class ShardedProgram implements SpectrumSource {
+
+  private final List<Program> shards;
+  private final List<ProgramSnapshot> snapshots;
+  private final int[] entityOffsets;
+  /* shard => local test id => global test id */
+  private final int[][] globalTestIds;
+  private final int testCount;
+  private final int[] failedCounts;
+  private final int[] passedCounts;
+  /* by level ordinal: failed and passed tests covering at least one entity of the level */
+  private final long[] levelFailedTests;
+  private final long[] levelPassedTests;
+
+  private ShardedProgram(List<Program> shards) {
+    this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+    snapshots = shards.parallelStream()
+        .map(Program::freeze)
+        .collect(Collectors.toList());
+
+    entityOffsets = new int[snapshots.size() + 1];
+    for (int s = 0; s < snapshots.size(); s++) {
+      entityOffsets[s + 1] = entityOffsets[s] + snapshots.get(s).getEntityCount();
+    }
+
+    // global test ids, failed if failed in any shard
+    Map<TestCase, Integer> testIds = new HashMap<>();
+    globalTestIds = new int[snapshots.size()][];
+    var globalIds = globalTestIds;
+    var failed = new long[1];
+    var weights = new int[64];
+    for (int s = 0; s < snapshots.size(); s++) {
+      var snapshot = snapshots.get(s);
+      globalIds[s] = new int[snapshot.getTestCount()];
+      for (int t = 0; t < snapshot.getTestCount(); t++) {
+        int id = testIds.computeIfAbsent(snapshot.getTest(t), test -> testIds.size());
+        globalIds[s][t] = id;
+        if (id >>> 6 >= failed.length) {
+          failed = Arrays.copyOf(failed, Math.max(failed.length * 2, (id >>> 6) + 1));
+          weights = Arrays.copyOf(weights, failed.length << 6);
+        }
+        weights[id] = Math.max(weights[id], snapshot.getMultiplicity(t));
+        if (!snapshot.isPassed(t)) {
+          failed[id >>> 6] |= 1L << id;
+        }
+      }
+    }
+    testCount = testIds.size();
+    var failedMask = failed;
+    var testWeights = weights;
+
+    failedCounts = new int[entityOffsets[snapshots.size()]];
+    passedCounts = new int[failedCounts.length];
+    var levelCount = AnalysisLevel.values().length;
+    var levelMasks = new long[levelCount][(testCount + 63) >>> 6];
+    IntStream.range(0, snapshots.size()).parallel().forEach(s -> {
+      var snapshot = snapshots.get(s);
+      var ids = globalIds[s];
+      var disagrees = IntStream.range(0, ids.length)
+          .anyMatch(t -> snapshot.isPassed(t) == isFailed(failedMask, ids[t])
+              || snapshot.getMultiplicity(t) != testWeights[ids[t]]);
+      for (int e = 0; e < snapshot.getEntityCount(); e++) {
+        var global = entityOffsets[s] + e;
+        if (disagrees) {
+          failedCounts[global] = snapshot.getTestIds(e)
+              .filter(t -> isFailed(failedMask, ids[t]))
+              .map(t -> testWeights[ids[t]])
+              .sum();
+          passedCounts[global] = snapshot.getTestIds(e)
+              .filter(t -> !isFailed(failedMask, ids[t]))
+              .map(t -> testWeights[ids[t]])
+              .sum();
+        } else {
+          failedCounts[global] = snapshot.getFailedCount(e);
+          passedCounts[global] = snapshot.getPassedCount(e);
+        }
+      }
+      var shardMasks = new long[levelCount][(testCount + 63) >>> 6];
+      for (int e = 0; e < snapshot.getEntityCount(); e++) {
+        var level = snapshot.getLevel(e);
+        if (level != null) {
+          var mask = shardMasks[level.ordinal()];
+          snapshot.getTestIds(e).forEach(t -> mask[ids[t] >>> 6] |= 1L << ids[t]);
+        }
+      }
+      synchronized (levelMasks) {
+        for (int l = 0; l < levelCount; l++) {
+          for (int w = 0; w < levelMasks[l].length; w++) {
+            levelMasks[l][w] |= shardMasks[l][w];
+          }
+        }
+      }
+    });
+
+    levelFailedTests = new long[levelCount];
+    levelPassedTests = new long[levelCount];
+    for (int l = 0; l < levelCount; l++) {
+      for (int w = 0; w < levelMasks[l].length; w++) {
+        var failedWord = w < failedMask.length ? failedMask[w] : 0;
+        levelFailedTests[l] += weigh(testWeights, w, levelMasks[l][w] & failedWord);
+        levelPassedTests[l] += weigh(testWeights, w, levelMasks[l][w] & ~failedWord);
+      }
+    }
+  }
+
+  /**
+   * Sum of the weights of the tests set in word w of a test mask
+   */
+  private static long weigh(int[] weights, int w, long bits) {
+    long weight = 0;
+    for (; bits != 0; bits &= bits - 1) {
+      weight += weights[(w << 6) + Long.numberOfTrailingZeros(bits)];
+    }
+    return weight;
+  }
+
+  private static boolean isFailed(long[] failedMask, int testId) {
+    return (testId >>> 6) < failedMask.length && (failedMask[testId >>> 6] & (1L << testId)) != 0;
+  }
+
+  public static ShardedProgram of(List<Program> shards) {
+    return new ShardedProgram(shards);
+  }
+
+  /**
+   * Parse every module with its own parser, in parallel, one shard per module that parsed
+   */
+  public static ShardedProgram parse(Collection<? extends ProfilingParser> moduleParsers) {
+    return of(moduleParsers.parallelStream()
+        .map(ProfilingParser::toProgram)
+        .flatMap(Optional::stream)
+        .collect(Collectors.toList()));
+  }
+
+  public List<Program> getShards() {
+    return shards;
+  }
+
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  /**
+   * @return the shard holding the entity with the given global id
+   */
+  public int getShardOf(int entityId) {
+    var shard = Arrays.binarySearch(entityOffsets, entityId);
+    if (shard < 0) {
+      return -shard - 2;
+    }
+    // skip empty shards starting at the same offset
+    while (entityOffsets[shard + 1] == entityId) {
+      shard++;
+    }
+    return shard;
+  }
+
+  @Override
+  public int getEntityCount() {
+    return failedCounts.length;
+  }
+
+  /**
+   * Number of distinct tests over all shards
+   */
+  @Override
+  public int getTestCount() {
+    return testCount;
+  }
+
+  @Override
+  public AnalysisLevel getLevel(int entityId) {
+    var shard = getShardOf(entityId);
+    return snapshots.get(shard).getLevel(entityId - entityOffsets[shard]);
+  }
+
+  @Override
+  public AbstractEntity getEntity(int entityId) {
+    var shard = getShardOf(entityId);
+    return snapshots.get(shard).getEntity(entityId - entityOffsets[shard]);
+  }
+
+  /**
+   * Global ids of the tests executing an entity, in increasing order
+   */
+  @Override
+  public IntStream getTestIds(int entityId) {
+    var shard = getShardOf(entityId);
+    var ids = globalTestIds[shard];
+    return snapshots.get(shard).getTestIds(entityId - entityOffsets[shard])
+        .map(t -> ids[t])
+        .sorted();
+  }
+
+  public int getFailedCount(int entityId) {
+    return failedCounts[entityId];
+  }
+
+  public int getPassedCount(int entityId) {
+    return passedCounts[entityId];
+  }
+
+  @Override
+  public long getTotalFailedTests(AnalysisLevel level) {
+    return levelFailedTests[level.ordinal()];
+  }
+
+  @Override
+  public long getTotalPassedTests(AnalysisLevel level) {
+    return levelPassedTests[level.ordinal()];
+  }
+
+  /**
+   * Ids of the entities at a level, in increasing order, so shard by shard
+   */
+  @Override
+  public int[] getEntityIdsAt(AnalysisLevel level) {
+    return IntStream.range(0, snapshots.size())
+        .flatMap(s -> Arrays.stream(snapshots.get(s).getEntityIdsAt(level))
+            .map(e -> entityOffsets[s] + e))
+        .toArray();
+  }
+
+  @Override
+  public SpectrumColumns toSpectrumColumns(int[] entityIds) {
+    var size = entityIds.length;
+    var ef = new double[size];
+    var ep = new double[size];
+    var nf = new double[size];
+    var np = new double[size];
+    for (int i = 0; i < size; i++) {
+      var entity = entityIds[i];
+      var level = getLevel(entity);
+      ef[i] = failedCounts[entity];
+      ep[i] = passedCounts[entity];
+      if (level != null) {
+        nf[i] = levelFailedTests[level.ordinal()];
+        np[i] = levelPassedTests[level.ordinal()];
+      }
+    }
+    return new SpectrumColumns(ef, ep, nf, np);
+  }
+
+  /**
+   * Select the k best entities of a level as the merge of the top k of every shard, each shard
+   * scored and selected on its own
+   *
+   * @param levelColumns spectra of {@link #getEntityIdsAt(AnalysisLevel)}, in that order
+   * @return the top k, indexed by position in {@link #getEntityIdsAt(AnalysisLevel)}
+   */
+  public TopK selectTopK(SpectrumFormula formula, AnalysisLevel level,
+      SpectrumColumns levelColumns, int k) {
+    var scores = new double[levelColumns.size()];
+    var bounds = new int[snapshots.size() + 1];
+    for (int s = 0; s < snapshots.size(); s++) {
+      bounds[s + 1] = bounds[s] + snapshots.get(s).getEntityIdsAt(level).length;
+    }
+    var shardTops = IntStream.range(0, snapshots.size())
+        .parallel()
+        .mapToObj(s -> {
+          formula.score(levelColumns, scores, bounds[s], bounds[s + 1]);
+          return TopK.select(scores, bounds[s], bounds[s + 1], k);
+        })
+        .collect(Collectors.toList());
+    return TopK.merge(scores, shardTops, k, score -> (int) Arrays.stream(scores)
+        .filter(other -> Double.compare(other, score) == 0)
+        .count());
+  }
+}
@@ -0,0 +1,44 @@
+package statistics.entity;
+
+import statistics.algorithm.SpectrumColumns;
+
+import java.util.stream.IntStream;
+
+/**
+ * Read-only coverage that spectra are extracted from: a {@link ProgramSnapshot} held in memory, or
+ * a {@link MappedCoverageStore} read from a file. Entity ids are dense and stable for the lifetime
+ * of the source.
+ */
+public interface SpectrumSource {
+
+  int getEntityCount();
+
+  int getTestCount();
+
+  AnalysisLevel getLevel(int entityId);
+
+  /**
+   * The entity with the given id; stores may build it on each call, so only ask for the entities
+   * that are reported
+   */
+  AbstractEntity getEntity(int entityId);
+
+  /**
+   * Ids of the tests executing an entity, in increasing order
+   */
+  IntStream getTestIds(int entityId);
+
+  /**
+   * Ids of the entities at a level, in increasing order
+   */
+  int[] getEntityIdsAt(AnalysisLevel level);
+
+  /**
+   * Spectra of the given entities, in the given order
+   */
+  SpectrumColumns toSpectrumColumns(int[] entityIds);
+
+  long getTotalFailedTests(AnalysisLevel level);
+
+  long getTotalPassedTests(AnalysisLevel level);
+}
@@ -1,6 +1,9 @@
 package statistics.entity;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -12,6 +15,7 @@ import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 @NoArgsConstructor
@@ -25,9 +29,18 @@ public class TestCase {
   private boolean passed;
   private TestStatus status;
   private Set<AbstractEntity> entities = new HashSet<>();
+  @Setter(AccessLevel.NONE)
+  private Set<AnalysisLevel> coveredLevels = EnumSet.noneOf(AnalysisLevel.class);
   private Program parentProgram;
   private LocalDateTime started = LocalDateTime.MAX;
   private LocalDateTime ended = LocalDateTime.MAX;
+  /* number of coverage-identical tests this one stands for, see Program#deduplicateTests() */
+  @Setter(AccessLevel.NONE)
+  private int multiplicity = 1;
+  /* cached hash of id, name and qualifyName; 0 until computed */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  private int hash;
 
   public boolean isEmpty() {
     return id.equals("");
@@ -40,14 +53,25 @@ public class TestCase {
     this.passed = otherTest.passed;
     this.status = otherTest.status;
     this.entities = otherTest.entities;
+    this.coveredLevels = EnumSet.noneOf(AnalysisLevel.class);
+    this.coveredLevels.addAll(otherTest.coveredLevels);
     this.parentProgram = otherTest.parentProgram;
     this.started = otherTest.started;
     this.ended = otherTest.ended;
+    this.multiplicity = otherTest.multiplicity;
+    this.hash = 0;
   }
 
+  /**
+   * Names of registered tests are pooled by their {@link TestRegistry}, so equal names are usually
+   * the same String and compare by reference
+   */
   @Override
   public boolean equals(Object anotherTestCase) {
-    if (anotherTestCase.getClass() == TestCase.class) {
+    if (this == anotherTestCase) {
+      return true;
+    }
+    if (anotherTestCase != null && anotherTestCase.getClass() == TestCase.class) {
       var test = ((TestCase) anotherTestCase);
       return this.id.equals(test.getId()) && this.name.equals(test.getName()) && (
           this.qualifyName == null || this.qualifyName.equals(test.getQualifyName()));
@@ -57,12 +81,39 @@ public class TestCase {
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((qualifyName == null) ? 0 : qualifyName.hashCode());
-    result = prime * result + (name == null ? 0 : name.hashCode());
-    result = prime * result + (id == null ? 0 : id.hashCode());
-    return result;
+    if (hash == 0) {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((qualifyName == null) ? 0 : qualifyName.hashCode());
+      result = prime * result + (name == null ? 0 : name.hashCode());
+      result = prime * result + (id == null ? 0 : id.hashCode());
+      hash = result;
+    }
+    return hash;
+  }
+
+  public void setId(String id) {
+    this.id = id;
+    hash = 0;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+    hash = 0;
+  }
+
+  public void setQualifyName(String qualifyName) {
+    this.qualifyName = qualifyName;
+    hash = 0;
+  }
+
+  /**
+   * Replace the names by their instances in a pool; equal names keep the hash
+   */
+  void poolNames(UnaryOperator<String> pool) {
+    id = pool.apply(id);
+    name = pool.apply(name);
+    qualifyName = pool.apply(qualifyName);
   }
 
   public TestCase(String formattedLine) {
@@ -83,8 +134,16 @@ public class TestCase {
         entities.addAll((Collection<? extends AbstractEntity>) entityArray.stream()
                 .map(e -> ExecutionEntity.createEntity(this, (JSONObject) e))
                 .collect(Collectors.toList()));
+        entities.forEach(this::addCoveredLevel);
     }
 
+  public TestCase(String id, String name, boolean passed) {
+    this.id = id;
+    this.name = name;
+    this.passed = passed;
+    status = passed ? TestStatus.PASSED : TestStatus.FAILED;
+  }
+
   public TestCase(JsonObject jsonObject) {
     name = jsonObject.getString("name");
     id = jsonObject.getString("id");
@@ -104,17 +163,60 @@ public class TestCase {
         .stream()
         .map(line -> ExecutionEntity.createEntity(locationFQN, line, AnalysisLevel.METHOD))
         .collect(Collectors.toSet())); // added Method entities
+
+    entities.forEach(this::addCoveredLevel);
   }
 
+  /**
+   * Covered entities should be added through {@link #addCoveredEntity(AbstractEntity)} or {@link
+   * #addCoveredEntities(Collection)} so that the covered levels, and the totals of the parent
+   * program, stay in sync.
+   */
   public Set<AbstractEntity> getEntities() {
     return entities;
   }
 
+  public void setEntities(Set<AbstractEntity> entities) {
+    if (parentProgram != null) {
+      parentProgram.countTest(this, -1);
+    }
+    this.entities = entities;
+    coveredLevels = EnumSet.noneOf(AnalysisLevel.class);
+    if (entities != null) {
+      entities.forEach(this::addCoveredLevel);
+    }
+  }
+
   public void addCoveredEntity(AbstractEntity entity) {
       if (entities == null) {
           entities = new HashSet<>();
       }
     entities.add(entity);
+    addCoveredLevel(entity);
+    if (parentProgram != null) {
+      parentProgram.onCoverageChanged();
+    }
+  }
+
+  public void addCoveredEntities(Collection<? extends AbstractEntity> coveredEntities) {
+    coveredEntities.forEach(this::addCoveredEntity);
+  }
+
+  private void addCoveredLevel(AbstractEntity entity) {
+    if (entity == null || entity.getType() == null) {
+      return;
+    }
+    if (coveredLevels.add(entity.getType()) && parentProgram != null) {
+      parentProgram.onLevelCovered(this, entity.getType());
+    }
+  }
+
+  public Set<AnalysisLevel> getCoveredLevels() {
+    return Collections.unmodifiableSet(coveredLevels);
+  }
+
+  public boolean isCoveringLevel(AnalysisLevel level) {
+    return coveredLevels.contains(level);
   }
 
   public String getQualifyName() {
@@ -125,6 +227,42 @@ public class TestCase {
     return passed;
   }
 
+  public void setPassed(boolean passed) {
+    if (this.passed == passed) {
+      return;
+    }
+    if (parentProgram != null) {
+      parentProgram.countTest(this, -1);
+    }
+    this.passed = passed;
+    if (parentProgram != null) {
+      parentProgram.countTest(this, 1);
+      parentProgram.onTestStatusChanged(this, !passed, multiplicity);
+    }
+  }
+
+  /**
+   * Let this test stand for a number of tests with its coverage and verdict; counts of failed and
+   * passed tests weigh it that many times
+   */
+  public void setMultiplicity(int multiplicity) {
+    if (multiplicity < 1) {
+      throw new IllegalArgumentException("multiplicity must be positive but got " + multiplicity);
+    }
+    if (this.multiplicity == multiplicity) {
+      return;
+    }
+    if (parentProgram != null) {
+      parentProgram.countTest(this, -1);
+    }
+    var oldMultiplicity = this.multiplicity;
+    this.multiplicity = multiplicity;
+    if (parentProgram != null) {
+      parentProgram.countTest(this, 1);
+      parentProgram.onTestStatusChanged(this, passed, oldMultiplicity);
+    }
+  }
+
   public String getName() {
     return name;
   }
@@ -179,14 +317,14 @@ public class TestCase {
     }
 
     if (this == otherTest) {
-      this.entities.addAll(otherTest.entities);
+      this.addCoveredEntities(otherTest.entities);
     }
 
     return this;
   }
 
   public static TestCase merge(TestCase t1, TestCase t2) {
-    t1.entities.addAll(t2.entities);
+    t1.addCoveredEntities(t2.entities);
     return t1;
   }
 }
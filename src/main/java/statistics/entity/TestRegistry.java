@@ -0,0 +1,168 @@
+package statistics.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense ids for the tests of a program, with their statuses in a failed-test bitmap and their
+ * multiplicities, kept in step with {@link TestCase#setPassed(boolean)} and {@link
+ * TestCase#setMultiplicity(int)} by the program. Coverage rows of the program, see {@link
+ * CoverageMatrix}, are over these ids; ids stay dense, so removing tests renumbers the tests after
+ * them, in order.
+ *
+ * <p>Test names are deduplicated in a string pool of the registry, which holds the names of the
+ * registered tests only.
+ */
+public class TestRegistry {
+
+  private final List<TestCase> tests = new ArrayList<>();
+  private final Map<TestCase, Integer> ids = new HashMap<>();
+  private long[] failed = new long[1];
+  /* test id => multiplicity, null while every test has multiplicity 1 */
+  private int[] weights;
+  /* name => its instance shared by the registered tests */
+  private final Map<String, String> names = new HashMap<>();
+
+  /**
+   * @return the id of the test, assigned on first registration
+   */
+  public synchronized int register(TestCase test) {
+    var id = ids.get(test);
+    if (id != null) {
+      return id;
+    }
+    id = tests.size();
+    tests.add(test);
+    ids.put(test, id);
+    test.poolNames(this::pooled);
+    if (id >>> 6 == failed.length) {
+      failed = Arrays.copyOf(failed, failed.length * 2);
+    }
+    if (weights != null && id == weights.length) {
+      weights = Arrays.copyOf(weights, weights.length * 2);
+    }
+    update(id, test);
+    return id;
+  }
+
+  public synchronized int getId(TestCase test) {
+    return ids.getOrDefault(test, -1);
+  }
+
+  public synchronized TestCase getTest(int id) {
+    return tests.get(id);
+  }
+
+  public synchronized int size() {
+    return tests.size();
+  }
+
+  public synchronized boolean isPassed(int id) {
+    return (failed[id >>> 6] & (1L << id)) == 0;
+  }
+
+  /**
+   * Multiplicity of the test, see {@link TestCase#getMultiplicity()}
+   */
+  public synchronized int getWeight(int id) {
+    return weights == null ? 1 : weights[id];
+  }
+
+  /**
+   * Whether some test has a multiplicity other than 1
+   */
+  public synchronized boolean isWeighted() {
+    return weights != null;
+  }
+
+  /**
+   * Failed-test bitmap over the ids; words past the last id are zero
+   */
+  synchronized long[] getFailedMask() {
+    return failed;
+  }
+
+  /**
+   * Refresh the status bit and multiplicity of a registered test from the test itself
+   */
+  public synchronized void update(TestCase test) {
+    var id = getId(test);
+    if (id >= 0) {
+      update(id, test);
+    }
+  }
+
+  private void update(int id, TestCase test) {
+    if (test.isPassed()) {
+      failed[id >>> 6] &= ~(1L << id);
+    } else {
+      failed[id >>> 6] |= 1L << id;
+    }
+    if (weights == null && test.getMultiplicity() != 1) {
+      weights = new int[Math.max(64, tests.size() * 2)];
+      Arrays.fill(weights, 1);
+    }
+    if (weights != null) {
+      weights[id] = test.getMultiplicity();
+    }
+  }
+
+  /**
+   * Unregister tests, renumbering the tests left in order so that ids stay dense
+   *
+   * @return old id => new id, -1 for a removed test; null if none of the tests was registered
+   */
+  public synchronized int[] remove(Collection<TestCase> removed) {
+    var remap = new int[tests.size()];
+    var any = false;
+    for (TestCase test : removed) {
+      var id = ids.get(test);
+      if (id != null) {
+        remap[id] = -1;
+        any = true;
+      }
+    }
+    if (!any) {
+      return null;
+    }
+    var next = 0;
+    for (int id = 0; id < remap.length; id++) {
+      if (remap[id] < 0) {
+        ids.remove(tests.get(id));
+        continue;
+      }
+      remap[id] = next;
+      var test = tests.get(id);
+      tests.set(next, test);
+      ids.put(test, next);
+      next++;
+    }
+    tests.subList(next, tests.size()).clear();
+    names.clear();
+    tests.forEach(test -> test.poolNames(this::pooled));
+    var oldFailed = failed;
+    var oldWeights = weights;
+    failed = new long[Math.max(1, (next + 63) >>> 6)];
+    weights = oldWeights == null ? null : new int[Math.max(64, next)];
+    for (int id = 0; id < remap.length; id++) {
+      if (remap[id] < 0) {
+        continue;
+      }
+      if ((oldFailed[id >>> 6] & (1L << id)) != 0) {
+        failed[remap[id] >>> 6] |= 1L << remap[id];
+      }
+      if (weights != null) {
+        weights[remap[id]] = oldWeights[id];
+      }
+    }
+    return remap;
+  }
+
+  private String pooled(String name) {
+    return name == null ? null : names.computeIfAbsent(name, pooled -> pooled);
+  }
+}
@@ -1,5 +1,6 @@
 package statistics.experiment;
 
+import statistics.localization.LocalizationResult;
 import statistics.localization.SpectrumBasedLocalizer;
 
 import javax.json.Json;
@@ -7,26 +8,33 @@ import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import java.time.format.DateTimeFormatter;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 public class JsonAdapter {
 
   public static JsonObject writeSpectrumBasedLocalizerToJson(
       SpectrumBasedLocalizer localizingResult) {
+    return writeLocalizationResultToJson(localizingResult.toResult());
+  }
+
+  public static JsonObject writeLocalizationResultToJson(LocalizationResult localizingResult) {
+    var results = localizingResult.getRankedEntities();
+    var ranking = localizingResult.getRanking();
     return Json.createObjectBuilder()
         .add("time_stamp", localizingResult.getTimeStamp().format(DateTimeFormatter.ISO_DATE_TIME))
-        .add("program_name", localizingResult.getProgramName())
+        .add("program_name", localizingResult.getProgram().getName())
         .add("code_base", localizingResult.getProgram().getCodeBase())
         .add("code_version", localizingResult.getProgram().getVersion())
-        .add("analysis_level", localizingResult.getLocalizingLevel().toString())
-        .add("ranking_algorithm", localizingResult.getLocalizingAlgorithm().toString())
+        .add("analysis_level", localizingResult.getAnalysisLevel().toString())
+        .add("ranking_algorithm", localizingResult.getRankingAlgorithm().getName())
         .add("top_k", localizingResult.getTopK())
-        .add("entities", localizingResult.getResults()
-            .stream()
-            .map(e -> Json.createObjectBuilder()
-                .add("entity_name", e.toString())
-                .add("score",
-                    e.getRankingScoreByAlgorithm(localizingResult.getLocalizingAlgorithm())
-                        .toString()))
+        .add("entities", IntStream.range(0, results.size())
+            .mapToObj(position -> Json.createObjectBuilder()
+                .add("entity_name", results.get(position).toString())
+                .add("score", Double.toString(ranking.getScore(position)))
+                .add("dense_rank", ranking.getDenseRank(position))
+                .add("min_rank", ranking.getMinRank(position))
+                .add("average_rank", ranking.getAverageRank(position)))
             .collect((Supplier<JsonArrayBuilder>) Json::createArrayBuilder,
                 JsonArrayBuilder::add,
                 JsonArrayBuilder::add))
@@ -0,0 +1,29 @@
+package statistics.localization;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import statistics.algorithm.SpectrumFormula;
+import statistics.algorithm.TopK;
+import statistics.entity.AbstractEntity;
+import statistics.entity.AnalysisLevel;
+import statistics.entity.Program;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Top ranked entities of a program for one algorithm at one level; position i of the ranked
+ * entities matches position i of the ranking
+ */
+@AllArgsConstructor
+@Getter
+public class LocalizationResult {
+
+  Program program;
+  SpectrumFormula rankingAlgorithm;
+  AnalysisLevel analysisLevel;
+  LocalDateTime timeStamp;
+  int topK;
+  List<AbstractEntity> rankedEntities;
+  TopK ranking;
+}
@@ -6,11 +6,16 @@ import static statistics.algorithm.RankingAlgorithm.TARANTULA;
 import static statistics.entity.AnalysisLevel.STATEMENT;
 import static statistics.experiment.JsonUtils.parseJsonFromLocalFile;
 import static statistics.experiment.JsonUtils.writeJsonObjectToFile;
+import static statistics.profiling.CloverParams.CACHE_DIR;
+import static statistics.profiling.CloverParams.DEFAULT_MODULE_DIRS;
 import static statistics.profiling.CloverParams.DEFAULT_PROJECT_DIR;
 import static statistics.profiling.CloverParams.DEFAULT_PROJECT_PREFIX;
 import static statistics.profiling.CloverParams.TOP_K;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -23,10 +28,14 @@ import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
-import statistics.algorithm.RankingAlgorithm;
+import javax.json.stream.JsonGenerator;
+import statistics.algorithm.FormulaRegistry;
 import statistics.entity.AnalysisLevel;
 import statistics.entity.Program;
+import statistics.entity.ShardedProgram;
+import statistics.experiment.JsonAdapter;
 import statistics.profiling.CloverDataParser;
+import statistics.profiling.CloverReportWatcher;
 
 /**
  * This is a main class that uses a ranker which accepts a program and ranks all elements in the
@@ -34,44 +43,107 @@ import statistics.profiling.CloverDataParser;
  */
 public class Localizer {
 
-  private static Optional<Program> parseToProgram(String programDir, String program_prefix) {
-    return new ProgramBuilder().setProfilingParser
-        (
-            new CloverDataParser()
-                .setProgramBaseDir(programDir == null || programDir.isEmpty() ? DEFAULT_PROJECT_DIR
-                    .getStringValue() : programDir)
-                .setProgramPrefix(
-                    program_prefix == null || program_prefix.isEmpty() ? DEFAULT_PROJECT_PREFIX
-                        .getStringValue() : program_prefix)
-        )
-        .build();
+  private static CloverDataParser cloverParser(String programDir, String program_prefix) {
+    return new CloverDataParser()
+        .setProgramBaseDir(programDir == null || programDir.isEmpty() ? DEFAULT_PROJECT_DIR
+            .getStringValue() : programDir)
+        .setProgramPrefix(
+            program_prefix == null || program_prefix.isEmpty() ? DEFAULT_PROJECT_PREFIX
+                .getStringValue() : program_prefix);
+  }
+
+  /**
+   * A program to rank, mapped from the coverage store cache when one is configured and holds it
+   */
+  private static Optional<Program> parseToRankedProgram(String programDir,
+      String program_prefix) {
+    return new ProgramBuilder().setProfilingParser(cloverParser(programDir, program_prefix))
+        .setCacheDir(CACHE_DIR.getStringValue().isEmpty() ? null
+            : Paths.get(CACHE_DIR.getStringValue()))
+        .buildForRanking();
+  }
+
+  /**
+   * One shard per module directory, each parsed by its own Clover parser in parallel
+   */
+  private static Program parseToShardedProgram(String moduleDirs, String program_prefix) {
+    var prefix = program_prefix == null || program_prefix.isEmpty()
+        ? DEFAULT_PROJECT_PREFIX.getStringValue() : program_prefix;
+    return Program.sharded(ShardedProgram.parse(Arrays.stream(
+        (moduleDirs == null || moduleDirs.isEmpty() ? DEFAULT_MODULE_DIRS.getStringValue()
+            : moduleDirs).split(","))
+        .map(String::trim)
+        .map(dir -> new CloverDataParser().setProgramBaseDir(dir).setProgramPrefix(prefix))
+        .collect(toList())));
   }
 
   private static void localize(Program program) {
-    Optional.of(SpectrumBasedLocalizer.accept(program)
+    report(localizerOf(program).localizeBug());
+  }
+
+  private static SpectrumBasedLocalizer localizerOf(Program program) {
+    return SpectrumBasedLocalizer.accept(program)
         .setAlgorithm(TARANTULA)
         .setAnalysisLevel(STATEMENT)
-        .setTopK(TOP_K.getIntValue())
-        .localizeBug()
-        .reportToJson())
+        .setTopK(TOP_K.getIntValue());
+  }
+
+  private static void report(SpectrumBasedLocalizer localizer) {
+    Optional.of(localizer.reportToJson())
         .ifPresent(System.out::println);
   }
 
   public static void localize(String programDir, String program_prefix) {
-    parseToProgram(programDir, program_prefix)
+    parseToRankedProgram(programDir, program_prefix)
         .ifPresent(Localizer::localize);
   }
 
+  /**
+   * Localize, then localize again whenever rerun tests rewrite class files of the report in a way
+   * that may change the ranking, patching the program with the rewritten files only. While the
+   * test totals stay the same, only the changed entities are scored again and merged into the
+   * previous top k; runs until interrupted
+   */
+  public static void watch(String programDir, String program_prefix) throws IOException {
+    try (var watcher = CloverReportWatcher.watch(cloverParser(programDir, program_prefix))) {
+      var localizer = localizerOf(watcher.getProgram()).localizeBug();
+      report(localizer);
+      watcher.run(update -> {
+        if (!update.affects(STATEMENT)) {
+          return;
+        }
+        if (update.getChangedTotals().contains(STATEMENT)) {
+          localizer.localizeBug();
+        } else {
+          localizer.rerank(update.getChangedEntities());
+        }
+        report(localizer);
+      });
+    }
+  }
+
+  /**
+   * Localize over all modules at once; module directories are comma separated
+   */
+  public static void localizeModules(String moduleDirs, String program_prefix) {
+    localize(parseToShardedProgram(moduleDirs, program_prefix));
+  }
+
   private enum BugCategory {
     Real,
     Injected
   }
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws IOException {
     var bugId = args[0];
     var level = args[1];
     var type = args[2];
 
+    if (args.length > 3) {
+      // optional file of custom formulas, evaluated after the built-in algorithms
+      FormulaRegistry.load(Paths.get(args[3]));
+    }
+
     System.out.println("running with these params " + bugId + " " + level + " " + type + "\n");
 
     forEvaluation(DEFAULT_PROJECT_DIR.getStringValue(), DEFAULT_PROJECT_PREFIX.getStringValue(),
@@ -128,7 +200,8 @@ public class Localizer {
     final String DOC_ID_PREFIX = "dfl.software";
 
     SpectrumBasedLocalizer spectrumBasedLocalizer = SpectrumBasedLocalizer.accept(
-        parseToProgram(profilingDir, projectPrefix).orElseThrow(IllegalArgumentException::new));
+        parseToRankedProgram(profilingDir, projectPrefix)
+            .orElseThrow(IllegalArgumentException::new));
 
     JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
     String docId;
@@ -142,30 +215,44 @@ public class Localizer {
       docId = DOC_ID_PREFIX + "::" + projectPrefix + "::" + DateTimeUtils.getCurrentUnixTime();
     }
 
-    jsonObjectBuilder.add("evals",
-        (useAllRankingAlgorithms ? Arrays.stream(RankingAlgorithm.values()).collect(toList())
+    jsonObjectBuilder.add("evals", spectrumBasedLocalizer
+        .setAnalysisLevel(AnalysisLevel.valueOf(localizingLevel.toUpperCase()))
+        .setTopK(topK)
+        .localizeBug(useAllRankingAlgorithms ? FormulaRegistry.getAllFormulas()
             : Arrays.stream(rankingAlgorithms.split(","))
-                .map(algo -> RankingAlgorithm.valueOf(algo.toUpperCase()))
-                .collect(toList())).stream()
-            .map(algorithm -> spectrumBasedLocalizer
-                .setAlgorithm(algorithm)
-                .setAnalysisLevel(AnalysisLevel.valueOf(localizingLevel.toUpperCase()))
-                .setTopK(topK)
-                .localizeBug()
-                .reportToJson())
-            .collect(Json::createArrayBuilder, JsonArrayBuilder::add, JsonArrayBuilder::add)
-            .build());
-
-    if (includedProfiling) {
-      jsonObjectBuilder.add("profile", spectrumBasedLocalizer.getProgram().toProfile());
-    }
+                .map(FormulaRegistry::lookup)
+                .collect(toList()))
+        .stream()
+        .map(JsonAdapter::writeLocalizationResultToJson)
+        .collect(Json::createArrayBuilder, JsonArrayBuilder::add, JsonArrayBuilder::add)
+        .build());
 
     if (!Paths.get(resultDir, level).toFile().exists()) {
       Paths.get(resultDir, level).toFile().mkdir();
     }
 
-    writeJsonObjectToFile(jsonObjectBuilder.build(),
-        Paths.get(resultDir, level, docId + ".json").toFile().getAbsolutePath());
+    var resultFile = Paths.get(resultDir, level, docId + ".json").toFile().getAbsolutePath();
+    if (includedProfiling) {
+      writeWithProfile(jsonObjectBuilder.build(), spectrumBasedLocalizer.getProgram(), resultFile);
+    } else {
+      writeJsonObjectToFile(jsonObjectBuilder.build(), resultFile);
+    }
+  }
+
+  /**
+   * Write a result followed by the profile of the program, which is streamed into the file instead
+   * of being added to the result object
+   */
+  private static void writeWithProfile(JsonObject result, Program program, String fileName) {
+    try (OutputStream os = new BufferedOutputStream(new FileOutputStream(fileName));
+        JsonGenerator generator = Json.createGenerator(os)) {
+      generator.writeStartObject();
+      result.forEach(generator::write);
+      program.getProfileWriter().writeJson("profile", generator);
+      generator.writeEnd();
+    } catch (IOException e) {
+      System.out.println("Check if file path is correct.");
+    }
   }
 
   private static void updateMetaReposJsonObjectFile(String rootDir, String filePath)
@@ -3,20 +3,93 @@ package statistics.localization;
 import statistics.entity.Program;
 import statistics.profiling.ProfilingParser;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 
 public class ProgramBuilder {
 
   ProfilingParser profilingParser;
+  boolean deduplicateTests;
+  Path cacheDir;
 
   public ProgramBuilder setProfilingParser(ProfilingParser parser) {
     this.profilingParser = parser;
     return this;
   }
 
+  /**
+   * Collapse coverage-identical tests once parsed, see {@link Program#deduplicateTests()}
+   */
+  public ProgramBuilder setDeduplicateTests(boolean deduplicateTests) {
+    this.deduplicateTests = deduplicateTests;
+    return this;
+  }
+
+  /**
+   * Keep every parsed program in this directory as a coverage store named by the fingerprint of
+   * its input, see {@link ProfilingParser#getFingerprint()}. A later {@link #buildForRanking()}
+   * with the same fingerprint maps the store instead of parsing again.
+   */
+  public ProgramBuilder setCacheDir(Path cacheDir) {
+    this.cacheDir = cacheDir;
+    return this;
+  }
+
+  /**
+   * Parse the program, with its entity and test sets; with a cache directory, its coverage store is
+   * written there if missing
+   */
   public Optional<Program> build() {
-    return profilingParser.toProgram();
+    var parser = getParser();
+    var cached = cachedStoreOf(parser);
+    var program = parser.toProgram();
+    cached.filter(path -> !Files.isRegularFile(path))
+        .ifPresent(path -> program.ifPresent(parsed -> cache(parsed, path)));
+    return program;
   }
 
+  /**
+   * A program to rank only: with a cache directory holding the store of the input, the store is
+   * mapped instead of parsing, see {@link Program#open(Path)}, and the program has no entity and
+   * test sets; otherwise the program is parsed as by {@link #build()} and its store cached
+   */
+  public Optional<Program> buildForRanking() {
+    var parser = getParser();
+    var cached = cachedStoreOf(parser);
+    if (cached.isPresent() && Files.isRegularFile(cached.get())) {
+      try {
+        return Optional.of(Program.open(cached.get()));
+      } catch (IOException e) {
+        // unreadable or of an older version, parse and replace it
+        e.printStackTrace();
+      }
+    }
+    var program = parser.toProgram();
+    cached.ifPresent(path -> program.ifPresent(parsed -> cache(parsed, path)));
+    return program;
+  }
+
+  private ProfilingParser getParser() {
+    return deduplicateTests ? profilingParser.deduplicatingTests() : profilingParser;
+  }
 
+  private Optional<Path> cachedStoreOf(ProfilingParser parser) {
+    return cacheDir == null ? Optional.empty()
+        : parser.getFingerprint().map(fingerprint -> cacheDir.resolve(fingerprint + ".cov"));
+  }
+
+  /*
+      The store is written next to the target and moved over it, see MappedCoverageStore#write, so
+      a concurrent build never maps a partial store
+   */
+  private void cache(Program program, Path target) {
+    try {
+      Files.createDirectories(cacheDir);
+      program.writeCoverageStore(target).close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
 }
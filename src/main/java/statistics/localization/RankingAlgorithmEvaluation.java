@@ -26,7 +26,9 @@ public class RankingAlgorithmEvaluation {
     for (JsonValue prediction : entities) {
       score = Double.parseDouble(prediction.asJsonObject().getString("score"));
       entityName = prediction.asJsonObject().getString("entity_name");
-      if (score != prevScore) {
+      if (prediction.asJsonObject().containsKey("dense_rank")) {
+        ranking = prediction.asJsonObject().getInt("dense_rank");
+      } else if (score != prevScore) {
         ranking++;
         prevScore = score;
       }
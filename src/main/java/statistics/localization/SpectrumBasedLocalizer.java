@@ -1,17 +1,30 @@
 package statistics.localization;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import statistics.algorithm.BatchScorer;
+import statistics.algorithm.ParallelScorer;
 import statistics.algorithm.RankingAlgorithm;
+import statistics.algorithm.SpectrumClasses;
+import statistics.algorithm.SpectrumColumns;
+import statistics.algorithm.SpectrumFormula;
+import statistics.algorithm.TopK;
 import statistics.entity.AbstractEntity;
 import statistics.entity.AnalysisLevel;
 import statistics.entity.Program;
+import statistics.entity.ShardedProgram;
+import statistics.entity.SpectrumSource;
 import statistics.experiment.JsonAdapter;
 
 import javax.json.JsonObject;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static statistics.algorithm.RankingAlgorithm.TARANTULA;
 import static statistics.entity.AnalysisLevel.STATEMENT;
@@ -23,10 +36,17 @@ public class SpectrumBasedLocalizer {
 
   Program program;
   List<AbstractEntity> rankedList;
+  TopK ranking;
   RankingAlgorithm rankingAlgorithm = TARANTULA;
   AnalysisLevel analysisLevel = STATEMENT;
   LocalDateTime timeStamp;
   int topK = TOP_K.getIntValue();
+  /* when set, the spectrum classes of a level are scored and selected in chunks on its workers */
+  ParallelScorer parallelScorer;
+  /* algorithm, level and k of the current ranking, which rerank patches */
+  @Getter(AccessLevel.NONE)
+  @Setter(AccessLevel.NONE)
+  List<Object> rankedBy;
 
   private SpectrumBasedLocalizer(Program program) {
     this.program = program;
@@ -36,18 +56,150 @@ public class SpectrumBasedLocalizer {
     return new SpectrumBasedLocalizer(program);
   }
 
+  /**
+   * Select the top k entities at a level; only the selected entities are ordered, and each of them
+   * comes with its tie-aware ranks in {@link #getRanking()}
+   */
   public SpectrumBasedLocalizer rankByAlgorithmAtLevel(RankingAlgorithm algorithm,
       AnalysisLevel level) {
-    rankedList = program.indexByAlgorithm(algorithm)
-        .getEntitySet()
-        .stream()
-        .filter(e -> e.getType() == level)
+    var source = program.getSpectrumSource();
+    var entityIds = source.getEntityIdsAt(level);
+    var levelColumns = source.toSpectrumColumns(entityIds);
+    var result = rank(source, levelColumns, levelClassesOf(source, levelColumns), entityIds,
+        algorithm, level);
+    ranking = result.getRanking();
+    rankedList = result.getRankedEntities();
+    rankedBy = List.of(algorithm, level, topK);
+    return this;
+  }
+
+  /**
+   * Rank again after the spectra of some entities changed but the failed and passed test totals of
+   * the level did not, as after a rerun in watch mode. Only the changed entities are scored again;
+   * they are merged with the unchanged entities of the previous top k, whose scores still hold.
+   * Entities below the previous top k score at most its last score, so the patched top k is exact
+   * when its last score is higher, or equal with none of its ties left out; otherwise, or without a
+   * previous ranking to patch, all entities of the level are ranked again.
+   *
+   * @param changedEntities entities that joined, left or changed spectrum since the last ranking
+   */
+  public SpectrumBasedLocalizer rerank(Collection<? extends AbstractEntity> changedEntities) {
+    timeStamp = LocalDateTime.now();
+    if (ranking == null || !List.of(rankingAlgorithm, analysisLevel, topK).equals(rankedBy)
+        || program.getCoverageStore() != null || program.getShardedProgram() != null) {
+      return rank();
+    }
+    var coverage = program.getCoverageMatrix();
+    var levelPositions = new int[coverage.getEntityCount()];
+    var levelSize = 0;
+    for (int e = 0; e < levelPositions.length; e++) {
+      levelPositions[e] = coverage.getLevel(e) == analysisLevel ? levelSize++ : -1;
+    }
+
+    var scores = new double[levelSize];
+    var entities = new AbstractEntity[levelSize];
+    var candidates = IntStream.builder();
+    Set<AbstractEntity> changed = new HashSet<>(changedEntities);
+    for (int p = 0; p < ranking.size(); p++) {
+      var entity = rankedList.get(p);
+      var position = levelPositionOf(coverage.getEntityId(entity), levelPositions);
+      if (position >= 0 && !changed.contains(entity)) {
+        scores[position] = ranking.getScore(p);
+        entities[position] = entity;
+        candidates.add(position);
+      }
+    }
+    var rescored = changed.stream()
+        .filter(entity -> levelPositionOf(coverage.getEntityId(entity), levelPositions) >= 0)
+        .collect(Collectors.toList());
+    var rescoredScores = BatchScorer.score(SpectrumColumns.from(rescored), rankingAlgorithm);
+    for (int i = 0; i < rescored.size(); i++) {
+      var position = levelPositionOf(coverage.getEntityId(rescored.get(i)), levelPositions);
+      scores[position] = rescoredScores[i];
+      entities[position] = rescored.get(i);
+      candidates.add(position);
+    }
+
+    var patched = TopK.select(scores, candidates.build().toArray(), topK);
+    if (!isExactPatch(patched, levelSize)) {
+      return rank();
+    }
+    ranking = patched;
+    rankedList = IntStream.range(0, patched.size())
+        .mapToObj(position -> entities[patched.getIndex(position)])
         .collect(Collectors.toList());
-    rankedList.sort((e1, e2) -> -e1.getRankingScoreByAlgorithm(algorithm)
-        .compareTo(e2.getRankingScoreByAlgorithm(algorithm)));
     return this;
   }
 
+  /**
+   * Whether a top k patched from the previous one holds the k best entities of the level, with the
+   * ties of its last score counted, given that the entities left out of the previous top k kept
+   * their scores
+   */
+  private boolean isExactPatch(TopK patched, int levelSize) {
+    if (patched.size() != Math.min(topK, levelSize)) {
+      return false;
+    }
+    var last = ranking.size() - 1;
+    if (ranking.size() < topK || patched.size() == 0) {
+      return true;
+    }
+    var byScore = Double.compare(patched.getScore(patched.size() - 1), ranking.getScore(last));
+    // ties of the previous last score, in the level and within the previous top k
+    var levelTies = (int) Math.round(2 * (ranking.getAverageRank(last) - ranking.getMinRank(last)))
+        + 1;
+    var topTies = last + 2 - ranking.getMinRank(last);
+    return byScore > 0 || (byScore == 0 && levelTies == topTies);
+  }
+
+  private static int levelPositionOf(int entityId, int[] levelPositions) {
+    return entityId < 0 ? -1 : levelPositions[entityId];
+  }
+
+  /**
+   * Localize with several algorithms at once: spectrum classes of the current level are built once,
+   * and every algorithm is scored and top-k selected on them in parallel. All algorithms read the
+   * same {@link Program#getSpectrumSource() source}: the immutable snapshot of the program, or its
+   * coverage store.
+   *
+   * @return one result per algorithm, in the given order
+   */
+  public List<LocalizationResult> localizeBug(Collection<? extends SpectrumFormula> algorithms) {
+    timeStamp = LocalDateTime.now();
+    var source = program.getSpectrumSource();
+    var entityIds = source.getEntityIdsAt(analysisLevel);
+    var levelColumns = source.toSpectrumColumns(entityIds);
+    var levelClasses = levelClassesOf(source, levelColumns);
+    return (parallelScorer == null ? algorithms.parallelStream() : algorithms.stream())
+        .map(algorithm -> rank(source, levelColumns, levelClasses, entityIds, algorithm,
+            analysisLevel))
+        .collect(Collectors.toList());
+  }
+
+  private SpectrumClasses levelClassesOf(SpectrumSource source, SpectrumColumns levelColumns) {
+    return source instanceof ShardedProgram ? null : SpectrumClasses.of(levelColumns);
+  }
+
+  /**
+   * Score and order the spectrum classes of a level only, then expand the top k entities from them;
+   * in parallel mode, the class representatives are scored and selected in chunks, and over module
+   * shards, the top k of every shard are merged
+   */
+  private LocalizationResult rank(SpectrumSource source, SpectrumColumns levelColumns,
+      SpectrumClasses levelClasses, int[] entityIds, SpectrumFormula algorithm,
+      AnalysisLevel level) {
+    var topRanked = source instanceof ShardedProgram
+        ? ((ShardedProgram) source).selectTopK(algorithm, level, levelColumns, topK)
+        : parallelScorer == null
+            ? TopK.select(levelClasses.score(algorithm), levelClasses, topK)
+            : parallelScorer.scoreAndSelect(levelClasses, algorithm, topK);
+    var entities = IntStream.range(0, topRanked.size())
+        .mapToObj(position -> source.getEntity(entityIds[topRanked.getIndex(position)]))
+        .collect(Collectors.toList());
+    return new LocalizationResult(program, algorithm, level, timeStamp, topK, entities,
+        topRanked);
+  }
+
   public List<AbstractEntity> getTopK(int k) {
     return rankedList.subList(0, Math.min(k, rankedList.size()));
   }
@@ -75,6 +227,14 @@ public class SpectrumBasedLocalizer {
     return rank();
   }
 
+  /**
+   * Score in parallel on the given number of workers
+   */
+  public SpectrumBasedLocalizer setParallelism(int parallelism) {
+    parallelScorer = ParallelScorer.create(parallelism);
+    return this;
+  }
+
   public SpectrumBasedLocalizer setTopK(int k) {
     topK = k;
     return this;
@@ -92,6 +252,11 @@ public class SpectrumBasedLocalizer {
     return analysisLevel;
   }
 
+  public LocalizationResult toResult() {
+    return new LocalizationResult(program, rankingAlgorithm, analysisLevel, timeStamp, topK,
+        getResults(), ranking);
+  }
+
   public JsonObject reportToJson() {
     return JsonAdapter.writeSpectrumBasedLocalizerToJson(this);
   }
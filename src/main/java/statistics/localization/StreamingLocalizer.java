@@ -0,0 +1,304 @@
+package statistics.localization;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import statistics.algorithm.EntityClasses;
+import statistics.algorithm.IndexedScoreHeap;
+import statistics.algorithm.SpectrumFormula;
+import statistics.algorithm.TopK;
+import statistics.entity.AbstractEntity;
+import statistics.entity.AnalysisLevel;
+import statistics.entity.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static statistics.algorithm.RankingAlgorithm.TARANTULA;
+import static statistics.entity.AnalysisLevel.STATEMENT;
+import static statistics.profiling.CloverParams.TOP_K;
+
+/**
+ * Localize while the test suite is still running. Test results are accepted one at a time, and
+ * every result only updates the ef/ep counters of the entities the test covers and the nf/np
+ * totals, so the cost of an event is proportional to the coverage of its test.
+ *
+ * <p>Entities are kept in buckets of equal (ef, ep). nf and np are shared by all entities, so all
+ * members of a bucket have the same score, and buckets are ranked in an {@link IndexedScoreHeap}.
+ * Moving an entity between buckets is a point update in O(log b) for b buckets. A change of nf or
+ * np changes every score; the heap is then re-keyed lazily, in one linear pass when the ranking is
+ * next read, and the top k is read from the heap without sorting.
+ *
+ * <p>A test reported again replaces its previous result.
+ */
+@Getter
+public class StreamingLocalizer {
+
+  private final SpectrumFormula algorithm;
+  private final AnalysisLevel analysisLevel;
+  private final int topK;
+
+  /* entity name => dense entity id, in order of first coverage */
+  @Getter(AccessLevel.NONE)
+  private final Map<String, Integer> entityIds = new HashMap<>();
+  @Getter(AccessLevel.NONE)
+  private final List<String> entityNames = new ArrayList<>();
+  @Getter(AccessLevel.NONE)
+  private int[] ef = new int[64];
+  @Getter(AccessLevel.NONE)
+  private int[] ep = new int[64];
+
+  /* test id => result last reported for it */
+  @Getter(AccessLevel.NONE)
+  private final Map<String, TestResult> testResults = new HashMap<>();
+  private long totalFailedTests;
+  private long totalPassedTests;
+
+  /* (ef, ep) => slot of the bucket of entities with that pair */
+  @Getter(AccessLevel.NONE)
+  private final Map<Long, Integer> bucketSlots = new HashMap<>();
+  @Getter(AccessLevel.NONE)
+  private final List<TreeSet<Integer>> bucketMembers = new ArrayList<>();
+  @Getter(AccessLevel.NONE)
+  private final List<Long> bucketKeys = new ArrayList<>();
+  @Getter(AccessLevel.NONE)
+  private final Deque<Integer> freeSlots = new ArrayDeque<>();
+  @Getter(AccessLevel.NONE)
+  private int[] slotOf = new int[64];
+  @Getter(AccessLevel.NONE)
+  private final IndexedScoreHeap heap = new IndexedScoreHeap();
+  /* nf or np changed since the heap was last keyed */
+  @Getter(AccessLevel.NONE)
+  private boolean totalsChanged;
+
+  @Getter(AccessLevel.NONE)
+  private TopK ranking;
+
+  private StreamingLocalizer(SpectrumFormula algorithm, AnalysisLevel analysisLevel, int topK) {
+    this.algorithm = algorithm;
+    this.analysisLevel = analysisLevel;
+    this.topK = topK;
+  }
+
+  public static StreamingLocalizer create() {
+    return create(TARANTULA, STATEMENT, TOP_K.getIntValue());
+  }
+
+  public static StreamingLocalizer create(SpectrumFormula algorithm, AnalysisLevel analysisLevel,
+      int topK) {
+    return new StreamingLocalizer(algorithm, analysisLevel, topK);
+  }
+
+  /**
+   * Record the result of a test run
+   *
+   * @param testId the qualified name of the test
+   * @param passed whether the test passed
+   * @param coveredEntities names of the entities of the analysis level the test covered
+   */
+  public StreamingLocalizer accept(String testId, boolean passed,
+      Collection<String> coveredEntities) {
+    var previous = testResults.remove(testId);
+    if (previous != null) {
+      apply(previous, -1);
+    }
+    var result = new TestResult(passed, coveredEntities.stream()
+        .mapToInt(this::entityIdOf)
+        .distinct()
+        .toArray());
+    testResults.put(testId, result);
+    apply(result, 1);
+    ranking = null;
+    return this;
+  }
+
+  /**
+   * Record a test case whose entities are already known, keeping those at the analysis level
+   */
+  public StreamingLocalizer accept(TestCase test) {
+    var testId = (test.getQualifyName() == null ? "" : test.getQualifyName() + ":")
+        + test.getName() + ":" + test.getId();
+    return accept(testId, test.isPassed(), test.getEntities().stream()
+        .filter(entity -> entity.getType() == analysisLevel)
+        .map(AbstractEntity::toString)
+        .collect(Collectors.toList()));
+  }
+
+  private void apply(TestResult result, int delta) {
+    if (result.entities.length == 0) {
+      return;
+    }
+    if (result.passed) {
+      totalPassedTests += delta;
+    } else {
+      totalFailedTests += delta;
+    }
+    totalsChanged = true;
+    var counters = result.passed ? ep : ef;
+    for (int entity : result.entities) {
+      leaveBucket(entity);
+      counters[entity] += delta;
+      joinBucket(entity);
+    }
+  }
+
+  private int entityIdOf(String name) {
+    var id = entityIds.get(name);
+    if (id != null) {
+      return id;
+    }
+    id = entityNames.size();
+    if (id == ef.length) {
+      ef = Arrays.copyOf(ef, ef.length * 2);
+      ep = Arrays.copyOf(ep, ep.length * 2);
+      slotOf = Arrays.copyOf(slotOf, slotOf.length * 2);
+    }
+    entityIds.put(name, id);
+    entityNames.add(name);
+    joinBucket(id);
+    return id;
+  }
+
+  private void joinBucket(int entity) {
+    var key = ((long) ef[entity] << 32) | (ep[entity] & 0xffffffffL);
+    var slot = bucketSlots.get(key);
+    if (slot == null) {
+      slot = freeSlots.isEmpty() ? bucketMembers.size() : freeSlots.pop();
+      if (slot == bucketMembers.size()) {
+        bucketMembers.add(new TreeSet<>());
+        bucketKeys.add(key);
+      } else {
+        bucketMembers.set(slot, new TreeSet<>());
+        bucketKeys.set(slot, key);
+      }
+      bucketSlots.put(key, slot);
+      bucketMembers.get(slot).add(entity);
+      heap.set(slot, scoreOf(slot), entity);
+    } else {
+      var members = bucketMembers.get(slot);
+      members.add(entity);
+      if (members.first() == entity) {
+        heap.set(slot, heap.getScore(slot), entity);
+      }
+    }
+    slotOf[entity] = slot;
+  }
+
+  private void leaveBucket(int entity) {
+    int slot = slotOf[entity];
+    var members = bucketMembers.get(slot);
+    members.remove(entity);
+    if (members.isEmpty()) {
+      heap.remove(slot);
+      bucketSlots.remove(bucketKeys.get(slot));
+      bucketMembers.set(slot, null);
+      freeSlots.push(slot);
+    } else if (heap.getTieBreak(slot) == entity) {
+      heap.set(slot, heap.getScore(slot), members.first());
+    }
+  }
+
+  private double scoreOf(int slot) {
+    long key = bucketKeys.get(slot);
+    return algorithm.score((int) (key >>> 32), (int) key, totalFailedTests, totalPassedTests);
+  }
+
+  /**
+   * The current top k, recomputed at most once per accepted result. Only the best buckets down to
+   * the k-th entity, and the buckets tied with it, are read from the heap. Indices are entity ids,
+   * see {@link #getEntityName(int)}.
+   */
+  public TopK getRanking() {
+    if (ranking == null) {
+      if (totalsChanged) {
+        heap.rekeyAll(this::scoreOf);
+        totalsChanged = false;
+      }
+      var slots = new int[16];
+      var count = 0;
+      var covered = 0;
+      for (var best = heap.inOrder(); best.hasNext(); ) {
+        var slot = best.nextInt();
+        if (covered >= topK && (count == 0
+            || Double.compare(heap.getScore(slot), heap.getScore(slots[count - 1])) != 0)) {
+          break;
+        }
+        if (count == slots.length) {
+          slots = Arrays.copyOf(slots, count * 2);
+        }
+        slots[count++] = slot;
+        covered += bucketMembers.get(slot).size();
+      }
+
+      var selected = Arrays.copyOf(slots, count);
+      var classScores = Arrays.stream(selected).mapToDouble(heap::getScore).toArray();
+      ranking = TopK.selectOrdered(IntStream.range(0, count).toArray(), classScores,
+          new EntityClasses() {
+            @Override
+            public int getClassCount() {
+              return selected.length;
+            }
+
+            @Override
+            public int getEntityCount() {
+              return entityNames.size();
+            }
+
+            @Override
+            public int getClassSize(int classId) {
+              return bucketMembers.get(selected[classId]).size();
+            }
+
+            @Override
+            public PrimitiveIterator.OfInt members(int classId) {
+              return bucketMembers.get(selected[classId]).stream()
+                  .mapToInt(Integer::intValue)
+                  .iterator();
+            }
+          }, topK);
+    }
+    return ranking;
+  }
+
+  /**
+   * Names of the current top k entities, best first
+   */
+  public List<String> getRankedEntities() {
+    var current = getRanking();
+    return IntStream.range(0, current.size())
+        .mapToObj(position -> entityNames.get(current.getIndex(position)))
+        .collect(Collectors.toList());
+  }
+
+  public String getEntityName(int entityId) {
+    return entityNames.get(entityId);
+  }
+
+  public int getEntityCount() {
+    return entityNames.size();
+  }
+
+  public int getTestCount() {
+    return testResults.size();
+  }
+
+  private static final class TestResult {
+
+    private final boolean passed;
+    private final int[] entities;
+
+    private TestResult(boolean passed, int[] entities) {
+      this.passed = passed;
+      this.entities = entities;
+    }
+  }
+}
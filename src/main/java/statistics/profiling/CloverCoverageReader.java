@@ -0,0 +1,455 @@
+package statistics.profiling;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static statistics.profiling.CloverParams.CLOVER_SRC_FILE_LINES_STRING;
+import static statistics.profiling.CloverParams.CLOVER_TEST_TARGETS_STRING;
+
+/**
+ * Reads the coverage that a Clover report keeps in the .js file of a class, tokenizing the bytes of
+ * the file in place. Only two lines matter: clover.testTargets, holding for every test its name,
+ * verdict and the first lines of the statements and methods it hit, and clover.srcFileLines,
+ * holding for every source line the tests that hit it. Every test is handed to a {@link
+ * TestTargetSink} with the union of both as its statement lines; no JSON tree is built, and the
+ * only strings made are test ids and names.
+ */
+public final class CloverCoverageReader {
+
+  private static final byte[] TEST_TARGETS = ascii(CLOVER_TEST_TARGETS_STRING.getStringValue());
+  private static final byte[] SRC_FILE_LINES = ascii(
+      CLOVER_SRC_FILE_LINES_STRING.getStringValue());
+  private static final byte[] NAME = ascii("name");
+  private static final byte[] PASS = ascii("pass");
+  private static final byte[] STATEMENTS = ascii("statements");
+  private static final byte[] METHODS = ascii("methods");
+  private static final byte[] START_LINE = ascii("sl");
+  private static final byte[] TRUE = ascii("true");
+
+  @FunctionalInterface
+  public interface TestTargetSink {
+
+    /**
+     * @param id the key of the test, such as test_12
+     * @param statementLines lines of the statements hit, possibly repeated
+     */
+    void accept(String id, String name, boolean passed, int[] statementLines, int[] methodLines);
+  }
+
+  private final byte[] bytes;
+  private int position;
+  /* bounds of the last string token, quotes excluded */
+  private int stringStart;
+  private int stringEnd;
+  private boolean stringEscaped;
+
+  private CloverCoverageReader(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  public static void read(Path file, TestTargetSink sink) throws IOException {
+    try {
+      new CloverCoverageReader(Files.readAllBytes(file)).read(sink);
+    } catch (IOException e) {
+      throw new IOException(file + ": " + e.getMessage(), e);
+    }
+  }
+
+  public static void read(byte[] bytes, TestTargetSink sink) throws IOException {
+    new CloverCoverageReader(bytes).read(sink);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private void read(TestTargetSink sink) throws IOException {
+    var testTargets = -1;
+    var srcFileLines = -1;
+    for (int line = 0; line < bytes.length; line = nextLine(line)) {
+      if (testTargets < 0 && startsWith(line, TEST_TARGETS)) {
+        testTargets = line + TEST_TARGETS.length;
+      } else if (srcFileLines < 0 && startsWith(line, SRC_FILE_LINES)) {
+        srcFileLines = line + SRC_FILE_LINES.length;
+      }
+    }
+    if (testTargets < 0) {
+      return;
+    }
+    Map<Integer, IntList> linesByTest = new HashMap<>();
+    if (srcFileLines >= 0) {
+      position = srcFileLines;
+      readSrcFileLines(linesByTest);
+    }
+    position = testTargets;
+    readTestTargets(linesByTest, sink);
+  }
+
+  private int nextLine(int from) {
+    while (from < bytes.length && bytes[from] != '\n') {
+      from++;
+    }
+    return from + 1;
+  }
+
+  private boolean startsWith(int at, byte[] prefix) {
+    if (at + prefix.length > bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[at + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * [[tests of line 0], [tests of line 1], ...]
+   */
+  private void readSrcFileLines(Map<Integer, IntList> linesByTest) throws IOException {
+    skipTo('[');
+    expect('[');
+    var line = 0;
+    if (peek() == ']') {
+      position++;
+      return;
+    }
+    while (true) {
+      expect('[');
+      if (peek() != ']') {
+        while (true) {
+          var test = readInt();
+          linesByTest.computeIfAbsent(test, t -> new IntList()).add(line);
+          if (peek() != ',') {
+            break;
+          }
+          position++;
+        }
+      }
+      expect(']');
+      line++;
+      if (peek() != ',') {
+        break;
+      }
+      position++;
+    }
+    expect(']');
+  }
+
+  /**
+   * {"test_N": {"methods": [{"sl": L}, ...], "name": "...", "pass": true, "statements": [...]}, ...}
+   */
+  private void readTestTargets(Map<Integer, IntList> linesByTest, TestTargetSink sink)
+      throws IOException {
+    skipTo('{');
+    expect('{');
+    if (peek() == '}') {
+      position++;
+      return;
+    }
+    var statements = new IntList();
+    var methods = new IntList();
+    while (true) {
+      readString();
+      var id = decodeString();
+      expect(':');
+      expect('{');
+      statements.clear();
+      methods.clear();
+      String name = null;
+      var passed = false;
+      if (peek() != '}') {
+        while (true) {
+          readString();
+          var keyStart = stringStart;
+          var keyEnd = stringEnd;
+          expect(':');
+          if (isKey(keyStart, keyEnd, NAME)) {
+            readString();
+            name = decodeString();
+          } else if (isKey(keyStart, keyEnd, PASS)) {
+            passed = readBoolean();
+          } else if (isKey(keyStart, keyEnd, STATEMENTS)) {
+            readStartLines(statements);
+          } else if (isKey(keyStart, keyEnd, METHODS)) {
+            readStartLines(methods);
+          } else {
+            skipValue();
+          }
+          if (peek() != ',') {
+            break;
+          }
+          position++;
+        }
+      }
+      expect('}');
+
+      var fromSrcFileLines = linesByTest.get(testNumberOf(id));
+      if (fromSrcFileLines != null) {
+        statements.addAll(fromSrcFileLines);
+      }
+      sink.accept(id, name, passed, statements.toArray(), methods.toArray());
+
+      if (peek() != ',') {
+        break;
+      }
+      position++;
+    }
+    expect('}');
+  }
+
+  /**
+   * The N of an id test_N
+   */
+  private static int testNumberOf(String id) {
+    var separator = id.indexOf('_');
+    var end = id.indexOf('_', separator + 1);
+    return Integer.parseInt(id.substring(separator + 1, end < 0 ? id.length() : end));
+  }
+
+  /**
+   * [{"sl": L, ...}, ...]
+   */
+  private void readStartLines(IntList lines) throws IOException {
+    expect('[');
+    if (peek() == ']') {
+      position++;
+      return;
+    }
+    while (true) {
+      expect('{');
+      if (peek() != '}') {
+        while (true) {
+          readString();
+          var keyStart = stringStart;
+          var keyEnd = stringEnd;
+          expect(':');
+          if (isKey(keyStart, keyEnd, START_LINE)) {
+            lines.add(readInt());
+          } else {
+            skipValue();
+          }
+          if (peek() != ',') {
+            break;
+          }
+          position++;
+        }
+      }
+      expect('}');
+      if (peek() != ',') {
+        break;
+      }
+      position++;
+    }
+    expect(']');
+  }
+
+  private boolean isKey(int start, int end, byte[] key) {
+    return end - start == key.length && startsWith(start, key);
+  }
+
+  /**
+   * A JSON boolean, or a string holding true or false
+   */
+  private boolean readBoolean() throws IOException {
+    if (peek() == '"') {
+      readString();
+      return isKey(stringStart, stringEnd, TRUE);
+    }
+    if (startsWith(position, TRUE)) {
+      position += 4;
+      return true;
+    }
+    skipValue();
+    return false;
+  }
+
+  private int readInt() throws IOException {
+    skipWhitespace();
+    var negative = position < bytes.length && bytes[position] == '-';
+    if (negative) {
+      position++;
+    }
+    var start = position;
+    var value = 0;
+    while (position < bytes.length && bytes[position] >= '0' && bytes[position] <= '9') {
+      value = value * 10 + (bytes[position++] - '0');
+    }
+    if (position == start) {
+      throw malformed("a number");
+    }
+    return negative ? -value : value;
+  }
+
+  private void readString() throws IOException {
+    expect('"');
+    stringStart = position;
+    stringEscaped = false;
+    while (position < bytes.length && bytes[position] != '"') {
+      if (bytes[position] == '\\') {
+        stringEscaped = true;
+        position++;
+      }
+      position++;
+    }
+    if (position >= bytes.length) {
+      throw malformed("a closing quote");
+    }
+    stringEnd = position++;
+  }
+
+  private String decodeString() throws IOException {
+    if (!stringEscaped) {
+      return new String(bytes, stringStart, stringEnd - stringStart, StandardCharsets.UTF_8);
+    }
+    var decoded = new StringBuilder(stringEnd - stringStart);
+    var run = stringStart;
+    for (int i = stringStart; i < stringEnd; i++) {
+      if (bytes[i] != '\\') {
+        continue;
+      }
+      decoded.append(new String(bytes, run, i - run, StandardCharsets.UTF_8));
+      var escaped = bytes[++i];
+      switch (escaped) {
+        case 'b':
+          decoded.append('\b');
+          break;
+        case 'f':
+          decoded.append('\f');
+          break;
+        case 'n':
+          decoded.append('\n');
+          break;
+        case 'r':
+          decoded.append('\r');
+          break;
+        case 't':
+          decoded.append('\t');
+          break;
+        case 'u':
+          if (i + 4 >= stringEnd) {
+            throw malformed("four hex digits");
+          }
+          decoded.append((char) Integer.parseInt(
+              new String(bytes, i + 1, 4, StandardCharsets.US_ASCII), 16));
+          i += 4;
+          break;
+        default:
+          decoded.append((char) escaped);
+      }
+      run = i + 1;
+    }
+    return decoded.append(new String(bytes, run, stringEnd - run, StandardCharsets.UTF_8))
+        .toString();
+  }
+
+  /**
+   * Skip any JSON value
+   */
+  private void skipValue() throws IOException {
+    var first = peek();
+    if (first == '"') {
+      readString();
+    } else if (first == '{' || first == '[') {
+      var depth = 0;
+      do {
+        var b = bytes[position];
+        if (b == '"') {
+          readString();
+          continue;
+        }
+        if (b == '{' || b == '[') {
+          depth++;
+        } else if (b == '}' || b == ']') {
+          depth--;
+        }
+        position++;
+      } while (depth > 0 && position < bytes.length);
+      if (depth > 0) {
+        throw malformed("the end of a value");
+      }
+    } else {
+      var start = position;
+      while (position < bytes.length && isScalarByte(bytes[position])) {
+        position++;
+      }
+      if (position == start) {
+        throw malformed("a value");
+      }
+    }
+  }
+
+  private static boolean isScalarByte(byte b) {
+    return b >= '0' && b <= '9' || b >= 'a' && b <= 'z' || b == '-' || b == '+' || b == '.'
+        || b == 'E';
+  }
+
+  private byte peek() throws IOException {
+    skipWhitespace();
+    if (position >= bytes.length) {
+      throw malformed("more input");
+    }
+    return bytes[position];
+  }
+
+  private void expect(char expected) throws IOException {
+    if (peek() != expected) {
+      throw malformed("'" + expected + "'");
+    }
+    position++;
+  }
+
+  private void skipTo(char expected) {
+    while (position < bytes.length && bytes[position] != expected && bytes[position] != '\n') {
+      position++;
+    }
+  }
+
+  private void skipWhitespace() {
+    while (position < bytes.length && (bytes[position] == ' ' || bytes[position] == '\t'
+        || bytes[position] == '\r' || bytes[position] == '\n')) {
+      position++;
+    }
+  }
+
+  private IOException malformed(String expected) {
+    return new IOException("Malformed Clover coverage, expected " + expected + " at byte "
+        + position);
+  }
+
+  /**
+   * Growable int column
+   */
+  private static final class IntList {
+
+    private int[] values = new int[8];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    void addAll(IntList other) {
+      for (int i = 0; i < other.size; i++) {
+        add(other.values[i]);
+      }
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
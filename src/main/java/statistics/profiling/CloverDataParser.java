@@ -1,44 +1,74 @@
 package statistics.profiling;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
 import statistics.entity.AbstractEntity;
+import statistics.entity.AnalysisLevel;
 import statistics.entity.ExecutionEntity;
 import statistics.entity.Program;
 import statistics.entity.TestCase;
 
-import javax.json.*;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.*;
 import static statistics.profiling.CloverParams.*;
 
 public class CloverDataParser implements ProfilingParser {
 
+  private static final ClassFile END_OF_FILES = new ClassFile(-1, null, null);
+  /* how often a reader waiting for room in the queue checks whether the workers are alive */
+  private static final long ENQUEUE_TIMEOUT_MILLIS = 100;
+
   private String programDir;
   private String programPrefix;
+  private int workers = PARALLELISM.getIntValue();
+  private int maxInFlightFiles = MAX_IN_FLIGHT_FILES.getIntValue();
 
   public CloverDataParser setProgramBaseDir(String programBaseDir) {
     programDir = programBaseDir;
     return this;
   }
 
+  public String getProgramBaseDir() {
+    return programDir;
+  }
+
   public CloverDataParser setProgramPrefix(String programPrefix) {
     this.programPrefix = programPrefix;
     return this;
   }
 
+  /**
+   * How many threads parse class files
+   */
+  public CloverDataParser setWorkers(int workers) {
+    this.workers = Math.max(1, workers);
+    return this;
+  }
+
+  /**
+   * How many class files may be read and waiting for a parser at once
+   */
+  public CloverDataParser setMaxInFlightFiles(int maxInFlightFiles) {
+    this.maxInFlightFiles = Math.max(1, maxInFlightFiles);
+    return this;
+  }
+
   private Set<TestCase> extractedTestCases = new HashSet<>();
   private Set<AbstractEntity> extractedEntities;
 
@@ -51,28 +81,172 @@ public class CloverDataParser implements ProfilingParser {
   }
 
   /*
-      Return a map from a class to its covering tests
+      Collect the tests of all class files. The calling thread walks the report and reads the files
+      into a bounded queue; workers parse them into builders of their own, merged at the end. A
+      malformed class file is skipped as a whole.
    */
   private CloverDataParser getTestTargetMap(String projectBaseDir, String projectPrefix)
       throws IOException {
-    var cloverProfilingData = getJsonProfilingDataFiles(projectBaseDir)
-        .stream()
-        .flatMap(path -> getTestTargets(path, projectPrefix).entrySet().stream())
-        .collect(
-            groupingBy(Map.Entry::getKey,
-                Collectors.mapping(Map.Entry::getValue, Collectors.mapping(TestCase::new,
-                    Collectors
-                        .collectingAndThen(Collectors.reducing(TestCase::merge), Optional::get)
-                    )
-                )
-            )
-        )
-        .values();
-
-    extractedTestCases.addAll(cloverProfilingData);
+    BlockingQueue<ClassFile> queue = new ArrayBlockingQueue<>(maxInFlightFiles);
+    var pool = Executors.newFixedThreadPool(workers);
+    try {
+      var builders = new ArrayList<Future<TestTargetBuilder>>();
+      for (int w = 0; w < workers; w++) {
+        builders.add(pool.submit(() -> parseClassFiles(queue, projectPrefix)));
+      }
+      walkClassFiles(projectBaseDir, queue, builders);
+      for (int w = 0; w < workers; w++) {
+        enqueue(queue, END_OF_FILES, builders);
+      }
+      var merged = new TestTargetBuilder();
+      for (Future<TestTargetBuilder> builder : builders) {
+        merged.merge(builder.get());
+      }
+      extractedTestCases.addAll(merged.tests.values());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing " + projectBaseDir);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      // also wakes the workers still waiting for files when the walk failed
+      pool.shutdownNow();
+    }
     return this;
   }
 
+  /**
+   * SHA-256 over the prefix and the relative path, size and modification time of every class file
+   * of the report, in path order. The files are not read, so this is cheap next to parsing them.
+   */
+  @Override
+  public Optional<String> getFingerprint() {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(String.valueOf(programPrefix).getBytes(StandardCharsets.UTF_8));
+      var root = Paths.get(programDir);
+      var files = getJsonProfilingDataFiles(programDir).stream()
+          .map(root::relativize)
+          .sorted()
+          .collect(Collectors.toList());
+      var attributes = ByteBuffer.allocate(16);
+      for (Path file : files) {
+        digest.update((byte) 0);
+        digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+        var resolved = root.resolve(file);
+        digest.update(attributes.clear()
+            .putLong(Files.size(resolved))
+            .putLong(Files.getLastModifiedTime(resolved).toMillis())
+            .flip());
+      }
+      var hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return Optional.of(hex.substring(0, 32));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      e.printStackTrace();
+      return Optional.empty();
+    }
+  }
+
+  private static void walkClassFiles(String projectBaseDir, BlockingQueue<ClassFile> queue,
+      List<Future<TestTargetBuilder>> workers)
+      throws IOException, InterruptedException, ExecutionException {
+    var index = 0;
+    for (Path path : getJsonProfilingDataFiles(projectBaseDir)) {
+      byte[] bytes;
+      try {
+        bytes = Files.readAllBytes(path);
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+        continue;
+      }
+      enqueue(queue, new ClassFile(index++, path, bytes), workers);
+    }
+  }
+
+  /*
+      Wait for room in the queue. Only the workers drain it, so the wait fails as soon as one of
+      them failed instead of blocking for ever.
+   */
+  private static void enqueue(BlockingQueue<ClassFile> queue, ClassFile file,
+      List<Future<TestTargetBuilder>> workers) throws InterruptedException, ExecutionException {
+    while (!queue.offer(file, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      for (Future<TestTargetBuilder> worker : workers) {
+        if (worker.isDone()) {
+          worker.get();
+        }
+      }
+    }
+  }
+
+  private static TestTargetBuilder parseClassFiles(BlockingQueue<ClassFile> queue,
+      String projectPrefix) throws InterruptedException {
+    var builder = new TestTargetBuilder();
+    for (var file = queue.take(); file != END_OF_FILES; file = queue.take()) {
+      var fileTests = new ArrayList<TestCase>();
+      try {
+        var fqn = getClassFQN(file.path, projectPrefix);
+        CloverCoverageReader.read(file.bytes, (id, name, passed, statementLines, methodLines) -> {
+          var test = new TestCase(id, name, passed);
+          test.addCoveredEntities(toEntities(fqn, statementLines, methodLines));
+          fileTests.add(test);
+        });
+      } catch (IOException | RuntimeException e) {
+        new IOException(file.path + ": " + e.getMessage(), e).printStackTrace();
+        continue;
+      }
+      for (TestCase test : fileTests) {
+        builder.add(file.index, test);
+      }
+    }
+    return builder;
+  }
+
+  /**
+   * Parse the tests of one class file of the report, each covering entities of that class only.
+   * Entities covered by several of the tests are the same object.
+   */
+  public List<TestCase> parseClassFile(Path classFile) throws IOException {
+    var tests = new ArrayList<TestCase>();
+    Map<AbstractEntity, AbstractEntity> entities = new HashMap<>();
+    try {
+      var fqn = getClassName(classFile);
+      CloverCoverageReader.read(classFile, (id, name, passed, statementLines, methodLines) -> {
+        var test = new TestCase(id, name, passed);
+        toEntities(fqn, statementLines, methodLines)
+            .forEach(entity -> test.addCoveredEntity(entities.computeIfAbsent(entity, e -> e)));
+        tests.add(test);
+      });
+    } catch (RuntimeException e) {
+      throw new IOException(classFile + ": " + e.getMessage(), e);
+    }
+    return tests;
+  }
+
+  /**
+   * Qualified name of the class whose coverage a class file of the report holds
+   */
+  public String getClassName(Path classFile) {
+    return getClassFQN(classFile, programPrefix);
+  }
+
+  private static List<AbstractEntity> toEntities(String fqn, int[] statementLines,
+      int[] methodLines) {
+    var entities = new ArrayList<AbstractEntity>(statementLines.length + methodLines.length);
+    for (int line : statementLines) {
+      entities.add(ExecutionEntity.createEntity(fqn, line, AnalysisLevel.STATEMENT));
+    }
+    for (int line : methodLines) {
+      entities.add(ExecutionEntity.createEntity(fqn, line, AnalysisLevel.METHOD));
+    }
+    return entities;
+  }
+
   private CloverDataParser buildTestSet() throws IOException {
     return getTestTargetMap(programDir, programPrefix);
   }
@@ -90,8 +264,7 @@ public class CloverDataParser implements ProfilingParser {
           return testCase.getEntities().stream();
         })
         .collect(Collectors.collectingAndThen(groupingBy(e -> e, Collectors.reducing((e1, e2) -> {
-          ((ExecutionEntity) e1).getExecutionCount()
-              .putAll(((ExecutionEntity) e2).getExecutionCount());
+          ((ExecutionEntity) e2).getExecutionCount().forEach(e1::addTest);
           return e1;
         })), m -> m.values().stream().filter(Optional::isPresent).map(Optional::get)
             .collect(Collectors.toSet())));
@@ -109,124 +282,48 @@ public class CloverDataParser implements ProfilingParser {
     return String.format("%s%s", projectPrefix, classQFN.replace(".js", ""));
   }
 
-  @SuppressWarnings("unchecked")
-  private static List<JsonObject> extractTestTargets(String line, String fqn,
-      String... srcFileLines) {
-    var jsonString = line.substring(line.indexOf("{"), line.lastIndexOf("}") + 1);
-    try {
-      JSONObject jsonObject = (JSONObject) (new JSONParser()).parse(jsonString);
-      return (List<JsonObject>) jsonObject.entrySet().stream()
-          .map(e -> parseTestFromKeyValueString(e.toString(), fqn))
-          .collect(Collectors.toList());
-    } catch (ParseException e) {
-      e.printStackTrace();
-    }
-    return Collections.emptyList();
-  }
-
-  private static Map<Integer, List<Integer>> extractCodeCoveredByTestToMapFromTestToLocations(
-      String srcFileLines) {
-    var codeLines = Arrays.stream(
-        srcFileLines.substring(srcFileLines.indexOf("[") + 2, srcFileLines.lastIndexOf("]") - 1)
-            .split("], \\["))
-        .map(String::trim)
-        .collect(toList());
-
-    return IntStream.range(0, codeLines.size())
-        .boxed()
-        .filter(line -> !codeLines.get(line).equals(""))
-        .map(line -> Arrays.stream(codeLines.get(line).split(","))
-            .map(String::trim)
-            .map(Integer::parseInt)
-            .collect(toMap(test -> test, test -> line))
-        )
-        .flatMap(testToLineMap -> testToLineMap.entrySet().stream())
-        .collect(groupingBy(Map.Entry::getKey,
-            Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
-  }
-
-  private static JsonObject combiner(JsonObject testObject,
-      Map<Integer, List<Integer>> testToLocationMap) {
-    Set<Integer> locations = new HashSet<>(
-        testToLocationMap.get(Integer.parseInt(testObject.getString("id").split("_")[1])));
-
-    Set<Integer> locations2 = testObject.getJsonArray("lines")
-        .stream()
-        .map(jsonValue -> Integer.parseInt(jsonValue.toString()))
-        .collect(toSet());
-
-    locations.addAll(locations2);
-
-    var newJsonObject = Json.createObjectBuilder(testObject)
-        .add("lines", Json.createArrayBuilder(locations).build());
-
-    return newJsonObject.build();
-  }
-
-  public static Map<Integer, JsonObject> getTestTargets(Path javaJsonFilePath,
-      String projectPrefix) {
-    var fqn = getClassFQN(javaJsonFilePath, projectPrefix);
-
-    try (Stream<String> stringStream = Files.lines(javaJsonFilePath)) {
-      var map = stringStream.filter(
-          line -> line.startsWith(CLOVER_TEST_TARGETS_STRING.getStringValue()) || line
-              .startsWith(CLOVER_SRC_FILE_LINES_STRING.getStringValue()))
-          .collect(groupingBy(line -> line.substring(0, line.indexOf("=")).trim()));
-
-      var srcFileLines = extractCodeCoveredByTestToMapFromTestToLocations(
-          map.get(CLOVER_SRC_FILE_LINES_STRING.getStringValue()).get(0));
-
-      var targets = extractTestTargets(map.get(CLOVER_TEST_TARGETS_STRING.getStringValue()).get(0),
-          fqn);
-
-      return targets.stream()
-          .collect
-              (
-                  toMap
-                      (
-                          jsonObject -> Integer.parseInt(jsonObject.getString("id").split("_")[1]),
-                          jsonObject -> combiner(jsonObject, srcFileLines)
-                      )
-              );
-    } catch (IOException ioe) {
-      ioe.printStackTrace();
+  /*
+      A class file read ahead of the parsers, numbered in walk order
+   */
+  private static final class ClassFile {
+
+    private final int index;
+    private final Path path;
+    private final byte[] bytes;
+
+    private ClassFile(int index, Path path, byte[] bytes) {
+      this.index = index;
+      this.path = path;
+      this.bytes = bytes;
     }
-    return Map.of();
   }
 
-  private static JsonObject parseTestFromKeyValueString(String entry, String fqn) {
-    String testId = entry.split("=")[0].trim();
+  /*
+      Tests by id. A test met in several class files keeps the name and verdict of the first of them
+      in walk order, whichever worker parsed it, and covers the entities of all of them.
+   */
+  private static final class TestTargetBuilder {
+
+    private final Map<String, TestCase> tests = new HashMap<>();
+    private final Map<String, Integer> firstFiles = new HashMap<>();
+
+    private void add(int file, TestCase test) {
+      var id = test.getId();
+      var known = tests.get(id);
+      if (known == null) {
+        tests.put(id, test);
+        firstFiles.put(id, file);
+      } else if (file < firstFiles.get(id)) {
+        tests.put(id, TestCase.merge(test, known));
+        firstFiles.put(id, file);
+      } else {
+        TestCase.merge(known, test);
+      }
+    }
 
-    JSONObject data;
-    try {
-      data = (JSONObject) new JSONParser().parse(entry.split("=")[1].trim());
-    } catch (ParseException e) {
-      e.printStackTrace();
-      return JsonValue.EMPTY_JSON_OBJECT;
+    private void merge(TestTargetBuilder other) {
+      other.tests.forEach((id, test) -> add(other.firstFiles.get(id), test));
     }
-    String testName = data.get("name").toString();
-    String testStatus = data.get("pass").toString().equals("true") ? "passed" : "failed";
-    boolean passed = Boolean.parseBoolean(data.get("pass").toString());
-
-    JsonArrayBuilder lines = Json.createArrayBuilder();
-    Arrays.stream(((JSONArray) data.get("statements")).toArray())
-        .map(e -> Integer.parseInt(((JSONObject) e).get("sl").toString()))
-        .forEach(lines::add);
-
-    JsonArrayBuilder coveredMethods = Json.createArrayBuilder();
-    Arrays.stream(((JSONArray) data.get("methods")).toArray())
-        .map(e -> Integer.parseInt(((JSONObject) e).get("sl").toString()))
-        .forEach(coveredMethods::add);
-
-    return Json.createObjectBuilder()
-        .add("FQN", fqn)
-        .add("id", testId)
-        .add("name", testName)
-        .add("status", testStatus)
-        .add("passed", passed)
-        .add("lines", lines)
-        .add("methods", coveredMethods)
-        .build();
   }
 
   private Program thenBuildProgram() {
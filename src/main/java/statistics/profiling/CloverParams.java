@@ -24,7 +24,27 @@ public enum CloverParams {
       "flex-event-registration/event-registration-service-web/target/site/clover/com/cvent/eventregistration",
       "Where Clover report files have been generated"),
 
-  TOP_K(100, "Get only top k most suspicious elements");
+  DEFAULT_MODULE_DIRS(
+      "flex-event-registration/event-registration-service-web/target/site/clover/com/cvent/eventregistration,"
+          + "flex-event-registration/event-registration-shared/target/site/clover/com/cvent/eventregistration",
+      "Where the Clover reports of all modules have been generated, comma separated"),
+
+  TOP_K(100, "Get only top k most suspicious elements"),
+
+  PARALLELISM(Runtime.getRuntime().availableProcessors(),
+      "How many worker threads score entities in parallel indexing or parse report files"),
+
+  CHUNK_SIZE(2048, "How many entities a parallel indexing task scores, sized to stay in L2"),
+
+  MAX_IN_FLIGHT_FILES(64,
+      "How many report files are read ahead of the parsers; with one file held by every worker "
+          + "and one by the reader, at most this plus workers plus one files are in memory"),
+
+  CACHE_DIR("target/dfl-cache",
+      "Where parsed reports are kept as coverage stores by fingerprint, empty to always parse"),
+
+  WATCH_SETTLE_MILLIS(100,
+      "How long a report must stay quiet before its changed files are parsed in watch mode");
 
   String stringValue;
   int intValue;
@@ -0,0 +1,291 @@
+package statistics.profiling;
+
+import statistics.entity.AbstractEntity;
+import statistics.entity.AnalysisLevel;
+import statistics.entity.Program;
+import statistics.entity.TestCase;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static statistics.profiling.CloverParams.WATCH_SETTLE_MILLIS;
+import static statistics.profiling.CloverParams.getJsProfilingFileFilter;
+import static statistics.profiling.CloverParams.getMaxDepthSearch;
+
+/**
+ * Keeps the program of a Clover report in step with the report while tests are rerun. A rerun
+ * rewrites only the class files of the classes its tests hit; a {@link WatchService} over the
+ * report directories reports them, and only they are parsed again and patched into the program
+ * through {@link Program#replaceCoverage(java.util.Collection, java.util.Collection)}.
+ *
+ * <p>Events are taken in batches: after the first one, events keep being collected until the
+ * report has been quiet for {@link CloverParams#WATCH_SETTLE_MILLIS}, so that a file still being
+ * written is parsed once. A class file that fails to parse keeps its previous coverage until it
+ * changes again. A test takes the verdict of the class file parsed last that lists it.
+ */
+public class CloverReportWatcher implements AutoCloseable {
+
+  private final CloverDataParser parser;
+  private final Path root;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final Program program;
+  /* class name => entities of the program in that class */
+  private final Map<String, Set<AbstractEntity>> entitiesByClass;
+  private long settleMillis = WATCH_SETTLE_MILLIS.getIntValue();
+
+  private CloverReportWatcher(CloverDataParser parser) throws IOException {
+    this.parser = parser;
+    root = Paths.get(parser.getProgramBaseDir());
+    watchService = root.getFileSystem().newWatchService();
+    try {
+      // registered first, so a class file rewritten while parsing is patched again afterwards
+      register(root);
+      program = parser.toProgram()
+          .orElseThrow(() -> new IOException("Cannot parse the report in " + root));
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    entitiesByClass = program.getEntitySet().stream()
+        .collect(Collectors.groupingBy(AbstractEntity::getQualifiedName, Collectors.toSet()));
+  }
+
+  /**
+   * Parse a report and start watching it
+   */
+  public static CloverReportWatcher watch(CloverDataParser parser) throws IOException {
+    return new CloverReportWatcher(parser);
+  }
+
+  /**
+   * The program patched on every update
+   */
+  public Program getProgram() {
+    return program;
+  }
+
+  public CloverReportWatcher setSettleMillis(long settleMillis) {
+    this.settleMillis = Math.max(0, settleMillis);
+    return this;
+  }
+
+  private void register(Path directory) throws IOException {
+    List<Path> subdirectories;
+    try (var paths = Files.walk(directory, getMaxDepthSearch())) {
+      subdirectories = paths.filter(Files::isDirectory).collect(Collectors.toList());
+    }
+    for (Path subdirectory : subdirectories) {
+      var key = subdirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      directories.put(key, subdirectory);
+    }
+  }
+
+  /**
+   * Wait for the report to change, then patch the program with the class files that changed
+   *
+   * @return the update, empty if the events touched no class file
+   */
+  public Update take() throws IOException, InterruptedException {
+    Set<Path> classFiles = new TreeSet<>();
+    var rescan = false;
+    var key = watchService.take();
+    do {
+      rescan |= collect(key, classFiles);
+      key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+    } while (key != null);
+    return apply(classFiles, rescan);
+  }
+
+  /**
+   * Process the updates of the report as they come, until the watcher is closed or the thread
+   * interrupted
+   */
+  public void run(Consumer<Update> listener) throws IOException {
+    try {
+      while (true) {
+        var update = take();
+        if (!update.isEmpty()) {
+          listener.accept(update);
+        }
+      }
+    } catch (ClosedWatchServiceException e) {
+      // closed from another thread
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*
+      Add the class files an event key reports to the batch
+      @return whether events were lost, so that the whole report must be scanned
+   */
+  private boolean collect(WatchKey key, Set<Path> classFiles) throws IOException {
+    var directory = directories.get(key);
+    var overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW || directory == null) {
+        overflow = true;
+        continue;
+      }
+      var path = directory.resolve((Path) event.context());
+      if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+        register(path);
+        classFiles.addAll(CloverDataParser.getJsonProfilingDataFiles(path.toString()));
+      } else if (getJsProfilingFileFilter().test(path)) {
+        classFiles.add(path);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return overflow;
+  }
+
+  private Update apply(Set<Path> classFiles, boolean rescan) throws IOException {
+    if (rescan) {
+      classFiles.addAll(CloverDataParser.getJsonProfilingDataFiles(root.toString()));
+    }
+    /* class name => its class file, null if it went */
+    Map<String, Path> changedClasses = new TreeMap<>();
+    for (Path classFile : classFiles) {
+      try {
+        changedClasses.put(parser.getClassName(classFile), classFile);
+      } catch (RuntimeException e) {
+        new IOException(classFile + ": " + e.getMessage(), e).printStackTrace();
+      }
+    }
+    if (rescan) {
+      // classes whose class file went while events were lost
+      entitiesByClass.keySet().forEach(className -> changedClasses.putIfAbsent(className, null));
+    }
+
+    var totalsBefore = levelTotals();
+    Set<String> patchedClasses = new TreeSet<>();
+    Set<AbstractEntity> changedEntities = new HashSet<>();
+    for (Map.Entry<String, Path> changed : changedClasses.entrySet()) {
+      var className = changed.getKey();
+      var classFile = changed.getValue();
+      List<TestCase> tests;
+      try {
+        tests = classFile != null && Files.isRegularFile(classFile)
+            ? parser.parseClassFile(classFile) : List.of();
+      } catch (IOException e) {
+        e.printStackTrace();
+        continue;
+      }
+      changedEntities.addAll(program.replaceCoverage(
+          entitiesByClass.getOrDefault(className, Set.of()), tests));
+      Set<AbstractEntity> entities = tests.stream()
+          .flatMap(test -> test.getEntities().stream())
+          .collect(Collectors.toSet());
+      if (entities.isEmpty()) {
+        entitiesByClass.remove(className);
+      } else {
+        entitiesByClass.put(className, entities);
+      }
+      patchedClasses.add(className);
+    }
+
+    var totalsAfter = levelTotals();
+    Set<AnalysisLevel> changedTotals = EnumSet.noneOf(AnalysisLevel.class);
+    for (AnalysisLevel level : AnalysisLevel.values()) {
+      if (!Arrays.equals(totalsBefore[level.ordinal()], totalsAfter[level.ordinal()])) {
+        changedTotals.add(level);
+      }
+    }
+    return new Update(patchedClasses, changedEntities, changedTotals);
+  }
+
+  /*
+      level ordinal => {failed tests, passed tests} covering the level
+   */
+  private long[][] levelTotals() {
+    var totals = new long[AnalysisLevel.values().length][];
+    for (AnalysisLevel level : AnalysisLevel.values()) {
+      totals[level.ordinal()] = new long[]{program.getTotalFailedTests(level),
+          program.getTotalPassedTests(level)};
+    }
+    return totals;
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  /**
+   * What a batch of changes to the report did to the program
+   */
+  public static final class Update {
+
+    private final Set<String> classNames;
+    private final Set<AbstractEntity> changedEntities;
+    private final Set<AnalysisLevel> changedTotals;
+
+    private Update(Set<String> classNames, Set<AbstractEntity> changedEntities,
+        Set<AnalysisLevel> changedTotals) {
+      this.classNames = Collections.unmodifiableSet(classNames);
+      this.changedEntities = Collections.unmodifiableSet(changedEntities);
+      this.changedTotals = Collections.unmodifiableSet(changedTotals);
+    }
+
+    public boolean isEmpty() {
+      return classNames.isEmpty();
+    }
+
+    /**
+     * Classes whose class file was parsed again, or went
+     */
+    public Set<String> getClassNames() {
+      return classNames;
+    }
+
+    /**
+     * Entities whose spectrum changed, see {@link Program#replaceCoverage(java.util.Collection,
+     * java.util.Collection)}
+     */
+    public Set<AbstractEntity> getChangedEntities() {
+      return changedEntities;
+    }
+
+    /**
+     * Levels whose numbers of failed or passed tests changed, so that every entity at them scores
+     * differently
+     */
+    public Set<AnalysisLevel> getChangedTotals() {
+      return changedTotals;
+    }
+
+    /**
+     * Whether the ranking of entities at a level may have changed
+     */
+    public boolean affects(AnalysisLevel level) {
+      return changedTotals.contains(level)
+          || changedEntities.stream().anyMatch(entity -> entity.getType() == level);
+    }
+  }
+}
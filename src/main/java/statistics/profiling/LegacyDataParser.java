@@ -58,7 +58,7 @@ public class LegacyDataParser {
         .stream()
         .filter(en -> new HashSet<>(Arrays.asList(levels)).contains(en.getKey()))
         .map(entry -> buildExecutionMap(entry.getKey(), entry.getValue()))
-        .reduce(new Program(), Program::addProgram);
+        .collect(Collectors.collectingAndThen(Collectors.toList(), Program::mergeAll));
   }
 
   public static Program buildExecutionMap(AnalysisLevel level,
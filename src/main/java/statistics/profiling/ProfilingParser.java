@@ -8,4 +8,31 @@ import java.util.Optional;
 public interface ProfilingParser {
 
   Optional<Program> toProgram();
+
+  /**
+   * This parser followed by {@link Program#deduplicateTests()}, for suites where many tests, such
+   * as parameterized ones, cover the same entities with the same verdict
+   */
+  default ProfilingParser deduplicatingTests() {
+    var parser = this;
+    return new ProfilingParser() {
+      @Override
+      public Optional<Program> toProgram() {
+        return parser.toProgram().map(Program::deduplicateTests);
+      }
+
+      @Override
+      public Optional<String> getFingerprint() {
+        return parser.getFingerprint().map(fingerprint -> fingerprint + "-dedup");
+      }
+    };
+  }
+
+  /**
+   * A key that changes whenever the input of {@link #toProgram()} does, cheap to compute next to
+   * parsing it, or empty if the input cannot be fingerprinted
+   */
+  default Optional<String> getFingerprint() {
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,126 @@
+package statistics.entity;
+
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoverageRowTest {
+
+  @Test
+  public void keepsIdsSortedAcrossChunks() {
+    var row = rowOf(70000, 3, 65536, 1, 3);
+    assertArrayEquals(new int[]{1, 3, 65536, 70000}, row.toArray());
+    assertEquals(4, row.cardinality());
+    assertTrue(row.contains(65536));
+    assertFalse(row.contains(2));
+    assertFalse(row.contains(131072));
+  }
+
+  @Test
+  public void movesToBitmapPastArrayLimit() {
+    var ids = IntStream.range(0, 5000).map(i -> 2 * i).toArray();
+    var row = rowOf(ids);
+
+    assertArrayEquals(ids, row.toArray());
+    assertEquals(5000, row.cardinality());
+    assertEquals(8 * 1024, row.runOptimize().getSizeInBytes() - 3);
+    assertTrue(row.contains(9998));
+    assertFalse(row.contains(9999));
+  }
+
+  @Test
+  public void runOptimizeMovesRangesToRuns() {
+    var ids = IntStream.range(100, 60000).toArray();
+    var row = rowOf(ids);
+    var bitmapBytes = row.getSizeInBytes();
+    row.runOptimize();
+
+    assertTrue(row.getSizeInBytes() < bitmapBytes);
+    assertTrue(row.getSizeInBytes() < 16);
+    assertArrayEquals(ids, row.toArray());
+    assertEquals(59900, row.cardinality());
+    assertTrue(row.contains(100));
+    assertTrue(row.contains(59999));
+    assertFalse(row.contains(99));
+    assertFalse(row.contains(60000));
+  }
+
+  @Test
+  public void runOptimizeKeepsSparseArrays() {
+    var row = rowOf(5, 50, 500).runOptimize();
+    assertEquals(3 + 2 * 3, row.getSizeInBytes());
+    assertArrayEquals(new int[]{5, 50, 500}, row.toArray());
+  }
+
+  @Test
+  public void addsToRunsAndShrunkArrays() {
+    var row = rowOf(IntStream.range(0, 1000).toArray()).runOptimize();
+    row.add(2000);
+    row.add(500);
+    assertEquals(1001, row.cardinality());
+    assertTrue(row.contains(2000));
+
+    var sparse = rowOf(7, 9).runOptimize();
+    sparse.add(8);
+    assertArrayEquals(new int[]{7, 8, 9}, sparse.toArray());
+  }
+
+  @Test
+  public void countsUnderMaskForEveryContainer() {
+    var mask = new long[2048];
+    IntStream.range(0, 2048 * 64).filter(id -> id % 3 == 0).forEach(id -> set(mask, id));
+
+    var array = rowOf(0, 1, 2, 3, 65538);
+    var bitmap = rowOf(IntStream.range(0, 6000).toArray());
+    var runs = rowOf(IntStream.range(10, 4000).toArray()).runOptimize();
+
+    assertEquals(3, array.andCardinality(mask));
+    assertEquals(2000, bitmap.andCardinality(mask));
+    assertEquals(1330, runs.andCardinality(mask));
+  }
+
+  @Test
+  public void countsUnderShortMask() {
+    var row = rowOf(1, 64, 70000);
+    var mask = new long[]{-1L, -1L};
+    assertEquals(2, row.andCardinality(mask));
+    assertEquals(2, rowOf(IntStream.range(0, 200).toArray()).runOptimize().andCardinality(
+        new long[]{1L, 1L}));
+  }
+
+  @Test
+  public void readsWordsAndOrsIntoMasks() {
+    var ids = new int[]{0, 63, 64, 130, 65600};
+    for (var row : new CoverageRow[]{rowOf(ids), rowOf(IntStream.range(64, 128).toArray())
+        .runOptimize()}) {
+      var mask = new long[2048];
+      row.orInto(mask);
+      for (int w = 0; w < mask.length; w++) {
+        assertEquals(mask[w], row.getWord(w));
+      }
+    }
+    var row = rowOf(ids);
+    assertEquals(1L | 1L << 63, row.getWord(0));
+    assertEquals(1L, row.getWord(1));
+    assertEquals(1L << 2, row.getWord(2));
+    assertEquals(1L, row.getWord(1025));
+    assertEquals(-1L, rowOf(IntStream.range(64, 128).toArray()).runOptimize().getWord(1));
+  }
+
+  private static CoverageRow rowOf(int... ids) {
+    var row = new CoverageRow();
+    for (int id : ids) {
+      row.add(id);
+    }
+    return row;
+  }
+
+  private static void set(long[] mask, int id) {
+    mask[id >>> 6] |= 1L << id;
+  }
+}
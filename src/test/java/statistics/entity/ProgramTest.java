@@ -0,0 +1,52 @@
+package statistics.entity;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProgramTest {
+
+  @Test
+  public void mergesOverlappingRunsByTest() {
+    var program = runOf(Map.of("f1", 3, "p1", 2), Map.of("f1", false, "p1", true));
+    var rerun = runOf(Map.of("f1", 3, "p2", 5), Map.of("f1", false, "p2", true));
+    var merged = program.addProgram(rerun);
+
+    assertEquals(1, merged.getTotalFailedTests(AnalysisLevel.STATEMENT));
+    assertEquals(2, merged.getTotalPassedTests(AnalysisLevel.STATEMENT));
+    assertEquals(1, merged.getEntitySet().size());
+    var entity = merged.getEntitySet().iterator().next();
+    assertEquals(1, entity.getTotalNumberOfFailedTests());
+    assertEquals(2, entity.getTotalNumberOfPassedTests());
+    assertEquals(3, countOf(merged, entity, "f1"));
+    assertEquals(2, countOf(merged, entity, "p1"));
+    assertEquals(5, countOf(merged, entity, "p2"));
+  }
+
+  /**
+   * A program of one statement executed by the given tests the given number of times
+   */
+  private static Program runOf(Map<String, Integer> counts, Map<String, Boolean> verdicts) {
+    var entity = ExecutionEntity.createEntity("p.A", 1, AnalysisLevel.STATEMENT);
+    var tests = new HashSet<TestCase>();
+    counts.forEach((id, count) -> {
+      var test = new TestCase(id, id, verdicts.get(id));
+      entity.addTest(test, count);
+      test.addCoveredEntities(List.of(entity));
+      tests.add(test);
+    });
+    return new Program(tests);
+  }
+
+  private static int countOf(Program program, AbstractEntity entity, String testId) {
+    var test = program.getTestSet().stream()
+        .filter(t -> t.getId().equals(testId))
+        .findFirst()
+        .orElseThrow();
+    return entity.getExecutionCountByTest(test);
+  }
+}
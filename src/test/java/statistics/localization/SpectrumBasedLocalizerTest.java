@@ -0,0 +1,89 @@
+package statistics.localization;
+
+import org.junit.Test;
+import statistics.algorithm.RankingAlgorithm;
+import statistics.entity.AbstractEntity;
+import statistics.entity.AnalysisLevel;
+import statistics.entity.ExecutionEntity;
+import statistics.entity.Program;
+import statistics.entity.TestCase;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SpectrumBasedLocalizerTest {
+
+  @Test
+  public void rerankAfterReplacedCoverageMatchesFullRanking() {
+    // A:1 and A:2 lead, B:1 trails them without a tie and B:2 is never executed by a failed test
+    Map<String, AbstractEntity> parsed = new HashMap<>();
+    var program = new Program(new HashSet<>(List.of(
+        test(parsed, "f1", false, "A:1", "A:2", "B:1"),
+        test(parsed, "p1", true, "A:1", "B:1", "B:2"),
+        test(parsed, "p2", true, "A:2", "B:1", "B:2"))));
+    var localizer = localizerOf(program).localizeBug();
+    assertEquals(Set.of("p.A:1", "p.A:2"), new HashSet<>(namesOf(localizer)));
+
+    // the rerun rewrites class B: B:2 is now hit by the failed test only, totals do not move
+    var stale = program.getEntitySet().stream()
+        .filter(entity -> entity.getQualifiedName().equals("p.B"))
+        .collect(Collectors.toList());
+    Map<String, AbstractEntity> reparsed = new HashMap<>();
+    var changed = program.replaceCoverage(stale, List.of(
+        test(reparsed, "f1", false, "B:2"),
+        test(reparsed, "p1", true, "B:1"),
+        test(reparsed, "p2", true, "B:1")));
+    changed.forEach(entity -> assertSame(program, entity.getParentProgram()));
+
+    localizer.rerank(changed);
+    var full = localizerOf(program).localizeBug();
+    // A:1 and A:2 tie, in the order of the entity set
+    assertEquals("p.B:2", namesOf(full).get(0));
+    assertEquals(namesOf(full), namesOf(localizer));
+    for (int position = 0; position < full.getRanking().size(); position++) {
+      assertEquals(full.getRanking().getScore(position),
+          localizer.getRanking().getScore(position), 0);
+      assertEquals(full.getRanking().getAverageRank(position),
+          localizer.getRanking().getAverageRank(position), 0);
+    }
+  }
+
+  private static SpectrumBasedLocalizer localizerOf(Program program) {
+    return SpectrumBasedLocalizer.accept(program)
+        .setAlgorithm(RankingAlgorithm.OCHIAI)
+        .setAnalysisLevel(AnalysisLevel.STATEMENT)
+        .setTopK(2);
+  }
+
+  private static List<String> namesOf(SpectrumBasedLocalizer localizer) {
+    return localizer.getRankedList().stream()
+        .map(entity -> entity.getQualifiedName() + ":" + ((ExecutionEntity) entity).getLineNumber())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * A test covering statements named class:line in package p, on the entities of one parse
+   */
+  private static TestCase test(Map<String, AbstractEntity> parsed, String id, boolean passed,
+      String... statements) {
+    var test = new TestCase(id, id, passed);
+    Set<AbstractEntity> covered = new HashSet<>();
+    for (String statement : statements) {
+      var separator = statement.indexOf(':');
+      var entity = parsed.computeIfAbsent(statement, s -> ExecutionEntity.createEntity(
+          "p." + s.substring(0, separator), Integer.parseInt(s.substring(separator + 1)),
+          AnalysisLevel.STATEMENT));
+      entity.addTest(test, 1);
+      covered.add(entity);
+    }
+    test.addCoveredEntities(covered);
+    return test;
+  }
+}
@@ -0,0 +1,110 @@
+package statistics.profiling;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CloverCoverageReaderTest {
+
+  @Test
+  public void decodesEscapesInNames() throws Exception {
+    var tests = read("Escapes.js");
+    assertEquals(3, tests.size());
+    assertEquals("test_7", tests.get(0).id);
+    assertEquals("t\"q\\ / \u00e9A \u00e9\tend", tests.get(0).name);
+    assertEquals("plain", tests.get(1).name);
+  }
+
+  @Test
+  public void skipsUnknownValuesAndMergesSourceLines() throws Exception {
+    var escaped = read("Escapes.js").get(0);
+    assertFalse(escaped.passed);
+    assertArrayEquals(new int[]{2, 3, 1, 2, 4}, escaped.statementLines);
+    assertArrayEquals(new int[]{2}, escaped.methodLines);
+  }
+
+  @Test
+  public void readsEmptyCoverage() throws Exception {
+    var plain = read("Escapes.js").get(1);
+    assertTrue(plain.passed);
+    assertArrayEquals(new int[]{2}, plain.statementLines);
+    assertArrayEquals(new int[0], plain.methodLines);
+
+    assertTrue(read("Empty.js").isEmpty());
+  }
+
+  @Test
+  public void readsTestTargetsWithoutSourceLines() throws Exception {
+    var tests = read("NoSrcFileLines.js");
+    assertEquals(1, tests.size());
+    assertFalse(tests.get(0).passed);
+    assertArrayEquals(new int[]{5, 6}, tests.get(0).statementLines);
+  }
+
+  @Test
+  public void readsStringValuedPass() throws Exception {
+    var quoted = read("Escapes.js").get(2);
+    assertEquals("quoted pass", quoted.name);
+    assertTrue(quoted.passed);
+    assertArrayEquals(new int[]{4, 4}, quoted.statementLines);
+  }
+
+  @Test
+  public void rejectsMalformedFiles() {
+    assertThrows(IOException.class, () -> read("Malformed.js"));
+    assertThrows(IOException.class, () -> readSource(
+        "clover.testTargets = {\"test_1\":{\"name\":\"\\u12\"}};\n"));
+    assertThrows(IOException.class, () -> readSource("clover.testTargets = {\"test_1\":{\n"));
+  }
+
+  private static List<Target> read(String fixture) throws IOException, URISyntaxException {
+    var tests = new ArrayList<Target>();
+    var path = Paths.get(CloverCoverageReaderTest.class.getResource("/clover/" + fixture).toURI());
+    CloverCoverageReader.read(path, (id, name, passed, statementLines, methodLines) ->
+        tests.add(new Target(id, name, passed, statementLines, methodLines)));
+    return tests;
+  }
+
+  private static List<Target> readSource(String source) throws IOException {
+    var tests = new ArrayList<Target>();
+    CloverCoverageReader.read(source.getBytes(StandardCharsets.UTF_8),
+        (id, name, passed, statementLines, methodLines) ->
+            tests.add(new Target(id, name, passed, statementLines, methodLines)));
+    return tests;
+  }
+
+  private static final class Target {
+
+    private final String id;
+    private final String name;
+    private final boolean passed;
+    private final int[] statementLines;
+    private final int[] methodLines;
+
+    private Target(String id, String name, boolean passed, int[] statementLines,
+        int[] methodLines) {
+      this.id = id;
+      this.name = name;
+      this.passed = passed;
+      this.statementLines = statementLines;
+      this.methodLines = methodLines;
+    }
+
+    @Override
+    public String toString() {
+      return id + " " + name + " " + passed + " " + Arrays.toString(statementLines);
+    }
+  }
+}
@@ -0,0 +1,3 @@
+var clover = new Object();
+clover.testTargets = {};
+clover.srcFileLines = [];
@@ -0,0 +1,6 @@
+var clover = new Object();
+// JSON: {test_ID : ...}
+clover.pageData = {"classes":[{"id":1,"name":"Escapes"}]};
+clover.testTargets = {"test_7" : {"methods" : [ {"sl" : 2 , "el": 9} ], "extra":{"x":[1,{"y":null}, -2.5e3, false]}, "name" : "t\"q\\ \/ \u00e9\u0041 é\tend", "pass" : false, "statements" : [ {"sl":2}, {"sl":3} ] }, "test_11":{"methods":[],"name":"plain","pass":true,"statements":[]}, "test_12":{"methods":[{"sl":4}],"name":"quoted pass","pass":"true","statements":[{"sl":4}]}};
+// JSON: lines
+clover.srcFileLines = [[], [7], [7, 11], [], [12, 7]];
@@ -0,0 +1,2 @@
+var clover = new Object();
+clover.testTargets = {"test_1":{"methods":[],"name":"unterminated,"pass":true,"statements":[]}};
@@ -0,0 +1,2 @@
+var clover = new Object();
+clover.testTargets = {"test_3":{"methods":[{"sl":5}],"name":"only targets","pass":"false","statements":[{"sl":5},{"sl":6}]}};